@@ -0,0 +1,127 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Finding whether a file declares a resource, for each resource type, the way the declaration walk does.
+ * </p>
+ * <p>
+ * Types declared in values files are looked up in a {@link ValuesIndex} of a strings file, which includes parsing it. Types declared by file name are a
+ * lookup of the file's name in the resources of that type, as {@link ResourceScanner} does for each file in their directories. id is looked up in the ids
+ * a layout declares, which is where most ids are declared. The resource looked for is one the file doesn't declare, as that's the answer for almost every
+ * file the walk checks.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeclarationBenchmark {
+    @Param({ "anim", "array", "attr", "bool", "color", "dimen", "drawable", "id", "integer", "layout", "menu", "plurals", "raw", "string", "style",
+            "styleable", "xml" })
+    public String type;
+
+    @Param({ "4096", "65536" })
+    public int fileSize;
+
+    private static final String RESOURCE_NAME = "not_declared_here";
+
+    private static final String[] sFileNameTypes = { "anim", "drawable", "layout", "menu", "raw", "xml" };
+
+    private SyntheticProject mProject;
+
+    /**
+     * ResourceName->Resource, for the types declared by file name
+     */
+    private final SortedMap<String, Resource> mResources = new TreeMap<String, Resource>();
+
+    private File mParent;
+    private String mFileName;
+    private String mFileContents;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mProject = SyntheticProject.generate(Files.createTempDirectory("declaration").toFile(), 10000, fileSize, 1);
+
+        final File file;
+
+        if (type.equals("id")) {
+            file = mProject.getLayoutFiles().get(0);
+        } else if (isFileNameType(type)) {
+            // Only the directory and file name matter, so give every file-based type a directory of its own
+            final File directory = new File(new File(mProject.getDirectory(), "res"), type);
+            directory.mkdirs();
+
+            file = new File(directory, RESOURCE_NAME + ".xml");
+            Files.copy(mProject.getLayoutFiles().get(0).toPath(), file.toPath());
+
+            for (int i = 0; i < mProject.getResourceCount(); i++) {
+                mResources.put(type + '_' + i, new Resource(type, type + '_' + i));
+            }
+        } else {
+            // The index is built from a res directory, so give the values file one of its own
+            final File directory = new File(new File(mProject.getDirectory(), "declaration-res"), "values");
+            directory.mkdirs();
+
+            file = new File(directory, "strings.xml");
+            Files.copy(mProject.getValuesFiles().get(0).toPath(), file.toPath());
+        }
+
+        mParent = file.getParentFile();
+        mFileName = file.getName();
+
+        // The contents returned by FileUtilities are only valid until it's called again, so take a copy
+        mFileContents = FileUtilities.getFileContents(file).toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mProject.delete();
+    }
+
+    @Benchmark
+    public boolean findDeclaration() {
+        if (type.equals("id")) {
+            return ValuesIndex.findDeclaredIds(mFileContents).contains(RESOURCE_NAME);
+        }
+
+        if (isFileNameType(type)) {
+            return mResources.get(mFileName.split("\\.")[0]) != null;
+        }
+
+        final ValuesIndex index = ValuesIndex.build(mParent.getParentFile(), null, null);
+        return !index.getLocations(type, RESOURCE_NAME).isEmpty();
+    }
+
+    private static boolean isFileNameType(final String type) {
+        for (final String fileNameType : sFileNameTypes) {
+            if (fileNameType.equals(type)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,52 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing R.java into the resource table, along with the styleable<->attr edges.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RJavaBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int resourceCount;
+
+    private SyntheticProject mProject;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mProject = SyntheticProject.generate(Files.createTempDirectory("rjava").toFile(), resourceCount, 4096, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mProject.delete();
+    }
+
+    @Benchmark
+    public ResourceTable readResources() throws IOException {
+        final ResourceTable resources = new ResourceTable();
+        ResourceScanner.readResources(mProject.getRJavaFile(), SyntheticProject.PACKAGE_NAME, resources, new ResourceGraph());
+        return resources;
+    }
+}
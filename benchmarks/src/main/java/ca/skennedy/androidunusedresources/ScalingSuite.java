@@ -0,0 +1,238 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Runs the whole scanner over synthetic projects of increasing size and reports the wall time and peak heap of each scan, so it's visible where the scanner
+ * stops scaling.
+ * </p>
+ * <p>
+ * Each scan runs in its own JVM, so one scan's heap and JIT state don't leak into the next, and running out of memory is reported rather than fatal.
+ * </p>
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar ca.skennedy.androidunusedresources.ScalingSuite [--sizes 1000,10000,100000,1000000] [--file-size N]
+ *     [--locales N] [--java-files N] [--libraries N] [--used-share 0.7] [--heap 2g] [--keep] [-- scanner arguments]
+ * </pre>
+ */
+public class ScalingSuite {
+    private static final String RESULT_PREFIX = "scaling-result ";
+
+    private static final Pattern sUnusedPattern = Pattern.compile("^(\\d+) unused resources were found");
+
+    private ScalingSuite() {
+        super();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length >= 3 && args[0].equals("--run")) {
+            runScan(args);
+            return;
+        }
+
+        final List<Integer> sizes = new ArrayList<Integer>();
+        int fileSize = 4096;
+        int localeCount = 0;
+        int javaFileCount = 0;
+        int libraryCount = 0;
+        double usedShare = 0.7;
+        String heap = null;
+        boolean keep = false;
+        final List<String> scannerArgs = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--sizes") && i + 1 < args.length) {
+                for (final String size : args[++i].split(",")) {
+                    sizes.add(Integer.valueOf(size.trim()));
+                }
+            } else if (args[i].equals("--file-size") && i + 1 < args.length) {
+                fileSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--locales") && i + 1 < args.length) {
+                localeCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--java-files") && i + 1 < args.length) {
+                javaFileCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--libraries") && i + 1 < args.length) {
+                libraryCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--used-share") && i + 1 < args.length) {
+                usedShare = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--heap") && i + 1 < args.length) {
+                heap = args[++i];
+            } else if (args[i].equals("--keep")) {
+                keep = true;
+            } else if (args[i].equals("--")) {
+                for (i++; i < args.length; i++) {
+                    scannerArgs.add(args[i]);
+                }
+            } else {
+                System.err.println("Usage: [--sizes N,N,...] [--file-size N] [--locales N] [--java-files N] [--libraries N] [--used-share F] [--heap SIZE]"
+                        + " [--keep] [-- scanner arguments]");
+                System.exit(1);
+            }
+        }
+
+        if (sizes.isEmpty()) {
+            sizes.add(1000);
+            sizes.add(10000);
+            sizes.add(100000);
+            sizes.add(1000000);
+        }
+
+        System.out.println(String.format("%10s %10s %10s %12s %10s %14s %8s", "resources", "files", "unused", "generate ms", "scan ms", "peak heap MB", "status"));
+
+        for (final int size : sizes) {
+            final File directory = Files.createTempDirectory("scaling" + size).toFile();
+
+            // Outside the project, so the scan doesn't find its own output
+            final File logFile = File.createTempFile("scaling" + size, ".log");
+
+            final SyntheticProject project = new SyntheticProject(size);
+            project.setFileSize(fileSize);
+            project.setLocaleCount(localeCount);
+            project.setJavaFileCount(javaFileCount);
+            project.setLibraryCount(libraryCount);
+            project.setUsedShare(usedShare);
+
+            final long generateStart = System.nanoTime();
+            project.generate(directory);
+            final long generateMillis = (System.nanoTime() - generateStart) / 1000000;
+
+            final List<String> command = new ArrayList<String>();
+            command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+
+            if (heap != null) {
+                command.add("-Xmx" + heap);
+            }
+
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(ScalingSuite.class.getName());
+            command.add("--run");
+            command.add(directory.getAbsolutePath());
+            command.add(logFile.getAbsolutePath());
+            command.addAll(scannerArgs);
+
+            final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+            String result = null;
+            final StringBuilder output = new StringBuilder();
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+
+            try {
+                String line;
+
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(RESULT_PREFIX)) {
+                        result = line.substring(RESULT_PREFIX.length());
+                    } else {
+                        output.append(line).append('\n');
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+
+            final int exitCode = process.waitFor();
+            final String unused = findUnusedCount(logFile);
+
+            if (result != null && exitCode == 0) {
+                final String[] fields = result.split(" ");
+                System.out.println(String.format("%10d %10d %10s %12d %10s %14s %8s", project.getResourceCount(), project.getFileCount(), unused, generateMillis,
+                        fields[0], fields[1], "ok"));
+            } else {
+                System.out.println(String.format("%10d %10d %10s %12d %10s %14s %8s", project.getResourceCount(), project.getFileCount(), unused, generateMillis,
+                        "-", "-", "exit " + exitCode));
+                System.out.print(output);
+            }
+
+            if (keep) {
+                System.out.println("  kept " + directory.getAbsolutePath() + " and its log " + logFile.getAbsolutePath());
+            } else {
+                project.delete();
+                logFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Runs a single scan in this JVM and prints its wall time and peak heap on a result line. The scanner's own output goes to the log file.
+     */
+    private static void runScan(final String[] args) throws IOException {
+        final File directory = new File(args[1]);
+        final File logFile = new File(args[2]);
+        final String[] scannerArgs = new String[args.length - 3];
+        System.arraycopy(args, 3, scannerArgs, 0, scannerArgs.length);
+
+        final List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+
+        final PrintStream out = System.out;
+        final PrintStream log = new PrintStream(new FileOutputStream(logFile));
+        final long start;
+        final long end;
+
+        try {
+            System.setOut(log);
+
+            start = System.nanoTime();
+            new ResourceScanner(directory.getAbsolutePath()).run(scannerArgs);
+            end = System.nanoTime();
+        } finally {
+            System.setOut(out);
+            log.close();
+        }
+
+        // The pools peak at different times, so their sum is an upper bound on the peak of the whole heap
+        long peakHeap = 0;
+
+        for (final MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+
+        out.println(RESULT_PREFIX + (end - start) / 1000000 + ' ' + peakHeap / (1024 * 1024));
+    }
+
+    private static String findUnusedCount(final File logFile) throws IOException {
+        if (!logFile.exists()) {
+            return "-";
+        }
+
+        final BufferedReader reader = new BufferedReader(new FileReader(logFile));
+
+        try {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                final Matcher matcher = sUnusedPattern.matcher(line);
+
+                if (matcher.find()) {
+                    return matcher.group(1);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return "0";
+    }
+}
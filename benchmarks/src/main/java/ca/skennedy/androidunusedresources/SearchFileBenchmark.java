@@ -0,0 +1,78 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Extracting the references and special uses from a single source file and a single layout, against every resource in R.java.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchFileBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int resourceCount;
+
+    @Param({ "4096", "65536" })
+    public int fileSize;
+
+    private SyntheticProject mProject;
+    private ResourceScanner mScanner;
+
+    private File mJavaFile;
+    private File mLayoutFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mProject = SyntheticProject.generate(Files.createTempDirectory("search").toFile(), resourceCount, fileSize, 1);
+
+        mScanner = new ResourceScanner(mProject.getDirectory().getAbsolutePath());
+
+        if (!mScanner.findProject(false)) {
+            throw new IllegalStateException("The synthetic project could not be found");
+        }
+
+        mScanner.loadResources();
+
+        mJavaFile = mProject.getJavaFiles().get(0);
+        mLayoutFile = mProject.getLayoutFiles().get(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mProject.delete();
+    }
+
+    @Benchmark
+    public ResourceGraph searchJavaFile() throws IOException {
+        final ResourceGraph graph = new ResourceGraph();
+        mScanner.searchFile(mJavaFile.getParentFile(), mJavaFile, ResourceScanner.sJavaFileType, graph);
+        return graph;
+    }
+
+    @Benchmark
+    public ResourceGraph searchXmlFile() throws IOException {
+        final ResourceGraph graph = new ResourceGraph();
+        mScanner.searchFile(mLayoutFile.getParentFile(), mLayoutFile, ResourceScanner.sXmlFileType, graph);
+        return graph;
+    }
+}
@@ -0,0 +1,732 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * <p>
+ * Writes a synthetic Android project in the layout the scanner expects: an R.java with roughly the requested number of resources, the source, layout,
+ * drawable and values files that declare and reference them, translations of the strings, and library projects referenced from project.properties.
+ * </p>
+ * <p>
+ * The used share of the resources is referenced, from code or from layouts. Files that hold a list of things (source files, layouts and values files) are
+ * filled up to about the file size.
+ * </p>
+ */
+public class SyntheticProject {
+    public static final String PACKAGE_NAME = "com.example.synthetic";
+
+    /**
+     * The share of each type in the generated resources, out of 100. Every styleable also has an entry for each of its two attrs.
+     */
+    private static final String[] sTypes = { "string", "drawable", "layout", "id", "dimen", "color", "style", "attr", "styleable" };
+    private static final int[] sWeights = { 40, 15, 5, 15, 8, 7, 5, 3, 2 };
+
+    /**
+     * The smallest valid PNG header, so drawables look like binaries
+     */
+    private static final byte[] sPngHeader = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+    /**
+     * Each library project declares this share of the resources, which are also in the app's R.java
+     */
+    private static final int LIBRARY_SHARE = 5;
+
+    private final int mResourceCount;
+
+    private int mFileSize = 4096;
+    private int mLocaleCount = 0;
+    private int mJavaFileCount = 0;
+    private double mUsedShare = 0.7;
+    private int mLibraryCount = 0;
+    private long mSeed = 1;
+
+    private File mDirectory;
+    private Random mRandom;
+    private int mFileCount;
+
+    /**
+     * ResourceType->(Names)
+     */
+    private final Map<String, List<String>> mNames = new LinkedHashMap<String, List<String>>();
+
+    /**
+     * ResourceType->(Names of the resources that are referenced)
+     */
+    private final Map<String, List<String>> mUsedNames = new LinkedHashMap<String, List<String>>();
+
+    /**
+     * For each library project, ResourceType->(Names)
+     */
+    private final List<Map<String, List<String>>> mLibraryNames = new ArrayList<Map<String, List<String>>>();
+
+    /**
+     * The references from code to library resources
+     */
+    private final List<String> mLibraryReferences = new ArrayList<String>();
+
+    private File mRJavaFile;
+    private final List<File> mJavaFiles = new ArrayList<File>();
+    private final List<File> mLayoutFiles = new ArrayList<File>();
+    private final List<File> mValuesFiles = new ArrayList<File>();
+
+    /**
+     * @param resourceCount
+     *            The approximate number of resources in R.java
+     */
+    public SyntheticProject(final int resourceCount) {
+        super();
+        mResourceCount = resourceCount;
+    }
+
+    /**
+     * Generates a project with the default locales, source files, used share and library projects.
+     *
+     * @param directory
+     *            Where to write the project, which must not exist or be empty
+     * @param resourceCount
+     *            The approximate number of resources in R.java
+     * @param fileSize
+     *            The approximate size in bytes of each source, layout and values file
+     * @param seed
+     *            Seeds the choice of which resources are referenced, so the same arguments always give the same project
+     */
+    public static SyntheticProject generate(final File directory, final int resourceCount, final int fileSize, final long seed) throws IOException {
+        final SyntheticProject project = new SyntheticProject(resourceCount);
+        project.setFileSize(fileSize);
+        project.setSeed(seed);
+        project.generate(directory);
+        return project;
+    }
+
+    /**
+     * @param fileSize
+     *            The approximate size in bytes of each source, layout and values file
+     */
+    public void setFileSize(final int fileSize) {
+        mFileSize = fileSize;
+    }
+
+    /**
+     * @param localeCount
+     *            The number of values directories with translations of most of the strings
+     */
+    public void setLocaleCount(final int localeCount) {
+        mLocaleCount = localeCount;
+    }
+
+    /**
+     * @param javaFileCount
+     *            The number of source files to spread the references over, or 0 for as many as it takes to keep them around the file size
+     */
+    public void setJavaFileCount(final int javaFileCount) {
+        mJavaFileCount = javaFileCount;
+    }
+
+    /**
+     * @param usedShare
+     *            The share of the resources that are referenced, between 0 and 1
+     */
+    public void setUsedShare(final double usedShare) {
+        mUsedShare = usedShare;
+    }
+
+    /**
+     * @param libraryCount
+     *            The number of library projects, each of which declares some of the resources
+     */
+    public void setLibraryCount(final int libraryCount) {
+        mLibraryCount = libraryCount;
+    }
+
+    /**
+     * @param seed
+     *            Seeds the choice of which resources are referenced, so the same settings always give the same project
+     */
+    public void setSeed(final long seed) {
+        mSeed = seed;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    public File getRJavaFile() {
+        return mRJavaFile;
+    }
+
+    public List<File> getJavaFiles() {
+        return mJavaFiles;
+    }
+
+    public List<File> getLayoutFiles() {
+        return mLayoutFiles;
+    }
+
+    public List<File> getValuesFiles() {
+        return mValuesFiles;
+    }
+
+    /**
+     * @return the number of resources in R.java
+     */
+    public int getResourceCount() {
+        int count = 0;
+
+        for (final List<String> names : mNames.values()) {
+            count += names.size();
+        }
+
+        for (final Map<String, List<String>> libraryNames : mLibraryNames) {
+            for (final List<String> names : libraryNames.values()) {
+                count += names.size();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the number of files written, including those of the library projects
+     */
+    public int getFileCount() {
+        return mFileCount;
+    }
+
+    /**
+     * Deletes the project's directory and everything in it.
+     */
+    public void delete() {
+        delete(mDirectory);
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+
+    /**
+     * @param directory
+     *            Where to write the project, which must not exist or be empty
+     */
+    public void generate(final File directory) throws IOException {
+        mDirectory = directory;
+        mRandom = new Random(mSeed);
+        mFileCount = 0;
+
+        mNames.clear();
+        mUsedNames.clear();
+        mLibraryNames.clear();
+        mLibraryReferences.clear();
+        mJavaFiles.clear();
+        mLayoutFiles.clear();
+        mValuesFiles.clear();
+
+        for (int i = 0; i < sTypes.length; i++) {
+            final String type = sTypes[i];
+            final int count = Math.max(1, mResourceCount * sWeights[i] / 100);
+
+            final List<String> names = new ArrayList<String>(count);
+            final List<String> usedNames = new ArrayList<String>();
+
+            for (int j = 0; j < count; j++) {
+                final String name = type.equals("styleable") ? "Styleable_" + j : type + '_' + j;
+                names.add(name);
+
+                if (mRandom.nextDouble() < mUsedShare) {
+                    usedNames.add(name);
+                }
+            }
+
+            mNames.put(type, names);
+            mUsedNames.put(type, usedNames);
+        }
+
+        // Library resources are strings and drawables, referenced from code
+        for (int i = 0; i < mLibraryCount; i++) {
+            final Map<String, List<String>> libraryNames = new LinkedHashMap<String, List<String>>();
+            final int count = Math.max(2, mResourceCount * LIBRARY_SHARE / 100);
+
+            for (final String type : new String[] { "string", "drawable" }) {
+                final List<String> names = new ArrayList<String>();
+
+                for (int j = 0; j < (type.equals("string") ? count * 2 / 3 : count - count * 2 / 3); j++) {
+                    final String name = "lib" + i + '_' + type + '_' + j;
+                    names.add(name);
+
+                    if (mRandom.nextDouble() < mUsedShare) {
+                        mLibraryReferences.add("R." + type + '.' + name);
+                    }
+                }
+
+                libraryNames.put(type, names);
+            }
+
+            mLibraryNames.add(libraryNames);
+        }
+
+        final File srcDirectory = new File(mDirectory, "src/" + PACKAGE_NAME.replace('.', '/'));
+        final File genDirectory = new File(mDirectory, "gen/" + PACKAGE_NAME.replace('.', '/'));
+        final File resDirectory = new File(mDirectory, "res");
+
+        mkdirs(srcDirectory);
+        mkdirs(genDirectory);
+
+        writeManifest(mDirectory, PACKAGE_NAME);
+        writeProjectProperties();
+        writeRJava(genDirectory, PACKAGE_NAME, mNames, mLibraryNames);
+        writeJavaFiles(srcDirectory);
+        writeLayouts(new File(resDirectory, "layout"));
+        writeDrawables(new File(resDirectory, "drawable"), mNames.get("drawable"));
+        writeValues(resDirectory);
+        writeLibraries();
+    }
+
+    private void writeManifest(final File directory, final String packageName) throws IOException {
+        final StringBuilder contents = new StringBuilder();
+
+        contents.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+        contents.append("<manifest xmlns:android=\"http://schemas.android.com/apk/res/android\" package=\"").append(packageName).append("\">\n");
+
+        if (packageName.equals(PACKAGE_NAME)) {
+            contents.append("    <application android:label=\"@string/string_0\" android:theme=\"@style/style_0\">\n");
+            contents.append("        <activity android:name=\".Screen0\" />\n");
+            contents.append("    </application>\n");
+        }
+
+        contents.append("</manifest>\n");
+
+        write(new File(directory, "AndroidManifest.xml"), contents);
+    }
+
+    private void writeProjectProperties() throws IOException {
+        final StringBuilder contents = new StringBuilder();
+
+        contents.append("target=android-19\n");
+
+        for (int i = 0; i < mLibraryCount; i++) {
+            contents.append("android.library.reference.").append(i + 1).append("=libraries/lib").append(i).append('\n');
+        }
+
+        write(new File(mDirectory, "project.properties"), contents);
+    }
+
+    /**
+     * Writes each library project, with its own manifest, R.java and declarations.
+     */
+    private void writeLibraries() throws IOException {
+        for (int i = 0; i < mLibraryNames.size(); i++) {
+            final File libraryDirectory = new File(mDirectory, "libraries/lib" + i);
+            final String packageName = PACKAGE_NAME + ".lib" + i;
+            final Map<String, List<String>> libraryNames = mLibraryNames.get(i);
+
+            final File genDirectory = new File(libraryDirectory, "gen/" + packageName.replace('.', '/'));
+            final File resDirectory = new File(libraryDirectory, "res");
+            final File valuesDirectory = new File(resDirectory, "values");
+
+            mkdirs(new File(libraryDirectory, "src"));
+            mkdirs(genDirectory);
+            mkdirs(valuesDirectory);
+
+            writeManifest(libraryDirectory, packageName);
+            writeRJava(genDirectory, packageName, libraryNames, new ArrayList<Map<String, List<String>>>());
+            writeDrawables(new File(resDirectory, "drawable"), libraryNames.get("drawable"));
+
+            final List<String> declarations = new ArrayList<String>();
+
+            for (final String name : libraryNames.get("string")) {
+                declarations.add("<string name=\"" + name + "\">Library text for " + name + "</string>");
+            }
+
+            writeValuesFiles(valuesDirectory, "strings", declarations);
+        }
+    }
+
+    /**
+     * @param libraryNames
+     *            The resources of the library projects, which are merged into each type
+     */
+    private void writeRJava(final File genDirectory, final String packageName, final Map<String, List<String>> names,
+            final List<Map<String, List<String>>> libraryNames) throws IOException {
+        final File rJavaFile = new File(genDirectory, "R.java");
+
+        if (packageName.equals(PACKAGE_NAME)) {
+            mRJavaFile = rJavaFile;
+        }
+
+        final Writer writer = new BufferedWriter(new FileWriter(rJavaFile));
+        mFileCount++;
+
+        try {
+            writer.write("/* AUTO-GENERATED FILE.  DO NOT MODIFY. */\n\n");
+            writer.write("package " + packageName + ";\n\n");
+            writer.write("public final class R {\n");
+
+            int typeId = 1;
+
+            for (final Map.Entry<String, List<String>> entry : names.entrySet()) {
+                writer.write("    public static final class " + entry.getKey() + " {\n");
+
+                final List<String> typeNames = new ArrayList<String>(entry.getValue());
+
+                for (final Map<String, List<String>> library : libraryNames) {
+                    if (library.containsKey(entry.getKey())) {
+                        typeNames.addAll(library.get(entry.getKey()));
+                    }
+                }
+
+                for (int i = 0; i < typeNames.size(); i++) {
+                    if (entry.getKey().equals("styleable")) {
+                        final String[] attrs = getStyleableAttrs(i);
+
+                        writer.write("        public static final int[] " + typeNames.get(i) + " = {\n");
+                        writer.write("            0x7f08" + String.format("%04x", i * 2) + ", 0x7f08" + String.format("%04x", i * 2 + 1) + "\n");
+                        writer.write("        };\n");
+
+                        for (int j = 0; j < attrs.length; j++) {
+                            writer.write("        public static final int " + typeNames.get(i) + '_' + attrs[j] + " = " + j + ";\n");
+                        }
+                    } else {
+                        writer.write(String.format("        public static final int %s=0x7f%02x%04x;\n", typeNames.get(i), typeId, i & 0xffff));
+                    }
+                }
+
+                writer.write("    }\n");
+                typeId++;
+            }
+
+            writer.write("}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the activities that reference the used resources that aren't referenced from layouts.
+     */
+    private void writeJavaFiles(final File srcDirectory) throws IOException {
+        final List<String> references = new ArrayList<String>();
+
+        for (final String type : new String[] { "string", "drawable", "layout", "id", "dimen", "color", "style", "styleable" }) {
+            for (final String name : mUsedNames.get(type)) {
+                // Layouts reference half of the used strings, drawables, dimens and colors
+                if (!isReferencedFromLayouts(type, name)) {
+                    references.add("R." + type + '.' + name);
+                }
+            }
+        }
+
+        // Styleables are referenced through their attributes
+        final List<String> styleables = mUsedNames.get("styleable");
+
+        for (int i = 0; i < styleables.size(); i++) {
+            references.add("R.styleable." + styleables.get(i) + '_' + getStyleableAttrs(Integer.parseInt(styleables.get(i).substring(10)))[0]);
+        }
+
+        references.addAll(mLibraryReferences);
+        Collections.shuffle(references, mRandom);
+
+        int fileIndex = 0;
+        int referenceIndex = 0;
+
+        do {
+
+            final String className = "Screen" + fileIndex++;
+            final File file = new File(srcDirectory, className + ".java");
+            final StringBuilder contents = new StringBuilder();
+
+            contents.append("package ").append(PACKAGE_NAME).append(";\n\n");
+            contents.append("import android.app.Activity;\n");
+            contents.append("import android.os.Bundle;\n\n");
+            contents.append("public class ").append(className).append(" extends Activity {\n");
+            contents.append("    @Override\n");
+            contents.append("    protected void onCreate(final Bundle savedInstanceState) {\n");
+            contents.append("        super.onCreate(savedInstanceState);\n");
+
+            // With a fixed number of files, the references are spread evenly over them whatever their size
+            final int referenceEnd = mJavaFileCount > 0 ? (int) ((long) references.size() * fileIndex / mJavaFileCount) : references.size();
+            int line = 0;
+
+            while (contents.length() < mFileSize || (mJavaFileCount > 0 && referenceIndex < referenceEnd)) {
+                if (referenceIndex < referenceEnd) {
+                    contents.append("        use(").append(references.get(referenceIndex++)).append(");\n");
+                }
+
+                // Ordinary code between the references
+                contents.append("        final int value").append(line).append(" = getResources().getInteger(").append(line).append(") * 2;\n");
+                line++;
+            }
+
+            contents.append("    }\n\n");
+            contents.append("    private void use(final int id) {\n");
+            contents.append("    }\n");
+            contents.append("}\n");
+
+            write(file, contents);
+            mJavaFiles.add(file);
+        } while (mJavaFileCount > 0 ? fileIndex < mJavaFileCount : referenceIndex < references.size());
+    }
+
+    private void writeLayouts(final File layoutDirectory) throws IOException {
+        mkdirs(layoutDirectory);
+
+        final List<String> layouts = mNames.get("layout");
+        final List<String> ids = mNames.get("id");
+        final List<String> attrs = mNames.get("attr");
+        final Set<String> usedAttrs = new HashSet<String>(mUsedNames.get("attr"));
+
+        final List<String> references = new ArrayList<String>();
+
+        for (final String type : new String[] { "string", "drawable", "dimen", "color" }) {
+            for (final String name : mUsedNames.get(type)) {
+                if (isReferencedFromLayouts(type, name)) {
+                    references.add("@" + type + '/' + name);
+                }
+            }
+        }
+
+        Collections.shuffle(references, mRandom);
+
+        int referenceIndex = 0;
+
+        for (int i = 0; i < layouts.size(); i++) {
+            final File file = new File(layoutDirectory, layouts.get(i) + ".xml");
+            final StringBuilder contents = new StringBuilder();
+
+            contents.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+            contents.append("<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n");
+            contents.append("    xmlns:app=\"http://schemas.android.com/apk/res-auto\"\n");
+            contents.append("    android:layout_width=\"match_parent\"\n");
+            contents.append("    android:layout_height=\"match_parent\"\n");
+            contents.append("    android:orientation=\"vertical\">\n");
+
+            // Every id is declared in exactly one layout
+            for (int id = i; id < ids.size(); id += layouts.size()) {
+                appendView(contents, ids.get(id), references, referenceIndex++, attrs, usedAttrs);
+            }
+
+            // The rest of the references are spread over the layouts
+            final int layoutReferences = references.size() / layouts.size() + (i < references.size() % layouts.size() ? 1 : 0);
+
+            for (int j = 0; j < layoutReferences; j++) {
+                appendView(contents, null, references, referenceIndex++, attrs, usedAttrs);
+            }
+
+            while (contents.length() < mFileSize) {
+                appendView(contents, null, references, mRandom.nextInt(Math.max(1, references.size())), attrs, usedAttrs);
+            }
+
+            contents.append("</LinearLayout>\n");
+
+            write(file, contents);
+            mLayoutFiles.add(file);
+        }
+    }
+
+    private void appendView(final StringBuilder contents, final String id, final List<String> references, final int referenceIndex, final List<String> attrs,
+            final Set<String> usedAttrs) {
+        contents.append("    <TextView\n");
+
+        if (id != null) {
+            contents.append("        android:id=\"@+id/").append(id).append("\"\n");
+        }
+
+        contents.append("        android:layout_width=\"wrap_content\"\n");
+        contents.append("        android:layout_height=\"wrap_content\"\n");
+
+        if (!references.isEmpty()) {
+            contents.append("        android:tag=\"").append(references.get(referenceIndex % references.size())).append("\"\n");
+        }
+
+        // Custom attributes are special uses of attrs
+        final String attr = attrs.get(mRandom.nextInt(attrs.size()));
+
+        if (usedAttrs.contains(attr)) {
+            contents.append("        app:").append(attr).append("=\"4dp\"\n");
+        }
+
+        contents.append("        android:text=\"Synthetic\" />\n");
+    }
+
+    private void writeDrawables(final File drawableDirectory, final List<String> names) throws IOException {
+        mkdirs(drawableDirectory);
+
+        for (final String name : names) {
+            final OutputStream outputStream = new FileOutputStream(new File(drawableDirectory, name + ".png"));
+            mFileCount++;
+
+            try {
+                outputStream.write(sPngHeader);
+            } finally {
+                outputStream.close();
+            }
+        }
+    }
+
+    private void writeValues(final File resDirectory) throws IOException {
+        final File valuesDirectory = new File(resDirectory, "values");
+        mkdirs(valuesDirectory);
+
+        final List<String> declarations = new ArrayList<String>();
+
+        for (final String name : mNames.get("string")) {
+            declarations.add("<string name=\"" + name + "\">Synthetic text for " + name + "</string>");
+        }
+
+        mValuesFiles.addAll(writeValuesFiles(valuesDirectory, "strings", declarations));
+        declarations.clear();
+
+        // Each locale translates most of the strings
+        for (int i = 0; i < mLocaleCount; i++) {
+            final String locale = getLocale(i);
+            final File localeDirectory = new File(resDirectory, "values-" + locale);
+            mkdirs(localeDirectory);
+
+            for (final String name : mNames.get("string")) {
+                if (mRandom.nextInt(10) < 8) {
+                    declarations.add("<string name=\"" + name + "\">Synthetic text for " + name + " (" + locale + ")</string>");
+                }
+            }
+
+            mValuesFiles.addAll(writeValuesFiles(localeDirectory, "strings", declarations));
+            declarations.clear();
+        }
+
+        for (final String name : mNames.get("dimen")) {
+            declarations.add("<dimen name=\"" + name + "\">" + (name.length() % 16) + "dp</dimen>");
+        }
+
+        for (final String name : mNames.get("color")) {
+            declarations.add("<color name=\"" + name + "\">#ff" + String.format("%06x", name.hashCode() & 0xffffff) + "</color>");
+        }
+
+        mValuesFiles.addAll(writeValuesFiles(valuesDirectory, "values", declarations));
+        declarations.clear();
+
+        // Each style's parent is the one before it, so styles are used through their children
+        final List<String> styles = mNames.get("style");
+
+        for (int i = 0; i < styles.size(); i++) {
+            final StringBuilder style = new StringBuilder("<style name=\"").append(styles.get(i)).append('"');
+
+            if (i > 0 && i % 4 != 0) {
+                style.append(" parent=\"").append(styles.get(i - 1)).append('"');
+            }
+
+            style.append(">\n        <item name=\"android:textSize\">14sp</item>\n    </style>");
+            declarations.add(style.toString());
+        }
+
+        mValuesFiles.addAll(writeValuesFiles(valuesDirectory, "styles", declarations));
+        declarations.clear();
+
+        for (final String name : mNames.get("attr")) {
+            declarations.add("<attr name=\"" + name + "\" format=\"dimension\" />");
+        }
+
+        final List<String> styleables = mNames.get("styleable");
+
+        for (int i = 0; i < styleables.size(); i++) {
+            final StringBuilder styleable = new StringBuilder("<declare-styleable name=\"").append(styleables.get(i)).append("\">");
+
+            for (final String attr : getStyleableAttrs(i)) {
+                styleable.append("\n        <attr name=\"").append(attr).append("\" />");
+            }
+
+            styleable.append("\n    </declare-styleable>");
+            declarations.add(styleable.toString());
+        }
+
+        mValuesFiles.addAll(writeValuesFiles(valuesDirectory, "attrs", declarations));
+    }
+
+    /**
+     * Writes declarations to as many files as it takes to keep each one around the file size.
+     *
+     * @return the files written
+     */
+    private List<File> writeValuesFiles(final File valuesDirectory, final String baseName, final List<String> declarations) throws IOException {
+        final List<File> files = new ArrayList<File>();
+        int fileIndex = 0;
+        int declarationIndex = 0;
+
+        while (declarationIndex < declarations.size()) {
+            final File file = new File(valuesDirectory, baseName + (fileIndex == 0 ? "" : "_" + fileIndex) + ".xml");
+            final StringBuilder contents = new StringBuilder();
+
+            contents.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+            contents.append("<resources>\n");
+
+            do {
+                contents.append("    ").append(declarations.get(declarationIndex++)).append('\n');
+            } while (declarationIndex < declarations.size() && contents.length() < mFileSize);
+
+            contents.append("</resources>\n");
+
+            write(file, contents);
+            files.add(file);
+            fileIndex++;
+        }
+
+        return files;
+    }
+
+    /**
+     * @return the two attrs that belong to a styleable
+     */
+    private String[] getStyleableAttrs(final int styleableIndex) {
+        final List<String> attrs = mNames.get("attr");
+        return new String[] { attrs.get((styleableIndex * 2) % attrs.size()), attrs.get((styleableIndex * 2 + 1) % attrs.size()) };
+    }
+
+    /**
+     * @return a two letter language code, different for every index below 676
+     */
+    private static String getLocale(final int index) {
+        return new String(new char[] { (char) ('a' + index / 26 % 26), (char) ('a' + index % 26) });
+    }
+
+    /**
+     * Half of the used strings, drawables, dimens and colors are referenced from layouts, and the rest from code.
+     */
+    private static boolean isReferencedFromLayouts(final String type, final String name) {
+        return (type.equals("string") || type.equals("drawable") || type.equals("dimen") || type.equals("color")) && (name.hashCode() & 1) == 0;
+    }
+
+    private void write(final File file, final CharSequence contents) throws IOException {
+        final Writer writer = new BufferedWriter(new FileWriter(file));
+        mFileCount++;
+
+        try {
+            writer.append(contents);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void mkdirs(final File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing the CSV for one resource type, where each resource is declared in a random subset of the configurations. The CSV is written through a buffer
+ * to a writer that only counts what it's given, so the file system isn't measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UsageMatrixBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int resourceCount;
+
+    @Param({ "4", "32" })
+    public int configurationCount;
+
+    private UsageMatrix mUsageMatrix;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(1);
+
+        final String[] configurations = new String[configurationCount];
+        configurations[0] = "values";
+
+        for (int i = 1; i < configurationCount; i++) {
+            configurations[i] = "values-l" + i;
+        }
+
+        final SortedMap<String, Resource> strings = new TreeMap<String, Resource>();
+
+        for (int i = 0; i < resourceCount; i++) {
+            final Resource resource = new Resource("string", "string_" + i);
+
+            // Every resource has a default, and some have translations
+            resource.addConfiguration(configurations[0]);
+
+            for (int j = 1; j < configurationCount; j++) {
+                if (random.nextBoolean()) {
+                    resource.addConfiguration(configurations[j]);
+                }
+            }
+
+            strings.put(resource.getName(), resource);
+        }
+
+        final SortedMap<String, SortedMap<String, Resource>> resources = new TreeMap<String, SortedMap<String, Resource>>();
+        resources.put("string", strings);
+
+        mUsageMatrix = new UsageMatrix(new File("."), resources);
+    }
+
+    @Benchmark
+    public long writeCsv() throws IOException {
+        final CountingWriter countingWriter = new CountingWriter();
+        final Writer writer = new BufferedWriter(countingWriter, 64 * 1024);
+
+        mUsageMatrix.writeCsv("string", writer);
+        writer.flush();
+
+        return countingWriter.mCount;
+    }
+
+    private static class CountingWriter extends Writer {
+        private long mCount = 0;
+
+        @Override
+        public void write(final char[] buffer, final int offset, final int length) {
+            mCount += length;
+        }
+
+        @Override
+        public void flush() {
+            // Nothing is buffered
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>
+ * Scans many projects in one process, such as every app under <code>packages/apps</code> in AOSP. The projects are given as a file that lists their
+ * directories, one per line, or as a glob of their directories, such as <code>packages/apps/*</code>.
+ * </p>
+ * <p>
+ * Every project is scanned on the same pool, and everything that outlives a scanner is shared between them: the resource types and their compiled patterns,
+ * and the symbols of library projects in {@link SymbolCache}, so a library used by many apps is only read once. Each project's report is written to its own
+ * file in the report directory, in any of the {@link Reporter} formats, and a line per project is printed once they've all been scanned.
+ * </p>
+ */
+public class BatchScanner {
+    public static final String DEFAULT_REPORT_DIRECTORY_NAME = "unused-resources-reports";
+
+    private static final String sSummaryFormat = "%-50s %s";
+
+    private BatchScanner() {
+        super();
+    }
+
+    /**
+     * @param baseDirectory
+     *            The directory the list of projects, or the glob, is relative to
+     * @param projects
+     *            A file listing the projects, or a glob matching them
+     * @param forkJoinPool
+     *            The pool the projects are scanned on, or null to scan them one at a time on the calling thread
+     */
+    public static void run(final File baseDirectory, final String projects, final File reportDirectory, final String reportFormat, final boolean isAosp,
+            final boolean useCache, final ForkJoinPool forkJoinPool) {
+        final List<File> projectDirectories;
+
+        try {
+            projectDirectories = findProjects(baseDirectory, projects);
+        } catch (final IOException e) {
+            System.err.println("Unable to find the projects in " + projects);
+            e.printStackTrace();
+            return;
+        }
+
+        if (projectDirectories.isEmpty()) {
+            System.err.println("No projects were found in " + projects);
+            return;
+        }
+
+        if (!reportDirectory.exists() && !reportDirectory.mkdirs()) {
+            System.err.println("Unable to create " + reportDirectory.getAbsolutePath());
+            return;
+        }
+
+        System.out.println(projectDirectories.size() + " projects found");
+        System.out.println();
+
+        final List<ProjectTask> tasks = new ArrayList<ProjectTask>();
+
+        for (final File projectDirectory : projectDirectories) {
+            final File reportFile = new File(reportDirectory, getReportName(baseDirectory, projectDirectory) + "." + Reporter.getExtension(reportFormat));
+            tasks.add(new ProjectTask(projectDirectory, reportFile, reportFormat, isAosp, useCache, forkJoinPool));
+        }
+
+        if (forkJoinPool != null) {
+            for (final ProjectTask task : tasks) {
+                forkJoinPool.execute(task);
+            }
+        }
+
+        for (final ProjectTask task : tasks) {
+            int unusedResourceCount;
+
+            try {
+                unusedResourceCount = forkJoinPool != null ? task.join() : task.compute();
+            } catch (final RuntimeException e) {
+                // One broken project shouldn't stop the rest of the batch
+                e.printStackTrace(new PrefixedPrintStream(System.err, task.getProjectDirectory().getPath() + ": "));
+                unusedResourceCount = -1;
+            }
+
+            final String summary;
+
+            if (unusedResourceCount < 0) {
+                summary = "not scanned, see " + task.getReportFile().getPath();
+            } else {
+                summary = unusedResourceCount + " unused resources, see " + task.getReportFile().getPath();
+            }
+
+            System.out.println(String.format(sSummaryFormat, task.getProjectDirectory().getPath(), summary));
+        }
+    }
+
+    /**
+     * @return the project directories, in the order they're listed or, for a glob, sorted by path
+     */
+    static List<File> findProjects(final File baseDirectory, final String projects) throws IOException {
+        final File listFile = resolve(baseDirectory, projects);
+
+        if (listFile.isFile()) {
+            final List<File> projectDirectories = new ArrayList<File>();
+
+            for (final String line : FileUtilities.getFileLines(listFile)) {
+                final String path = line.trim();
+
+                if (path.length() > 0 && !path.startsWith("#")) {
+                    projectDirectories.add(resolve(baseDirectory, path));
+                }
+            }
+
+            return projectDirectories;
+        }
+
+        final Path basePath = baseDirectory.toPath();
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + projects);
+
+        // A glob can only match as many directories deep as it has segments, unless it crosses directories
+        final int maxDepth = projects.contains("**") ? Integer.MAX_VALUE : projects.split("/").length;
+
+        final List<File> projectDirectories = new ArrayList<File>();
+
+        Files.walkFileTree(basePath, EnumSet.noneOf(FileVisitOption.class), maxDepth, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path directory, final BasicFileAttributes attributes) {
+                if (matcher.matches(basePath.relativize(directory))) {
+                    projectDirectories.add(directory.toFile());
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+                // The deepest directories are visited as files
+                if (attributes.isDirectory() && matcher.matches(basePath.relativize(file))) {
+                    projectDirectories.add(file.toFile());
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Collections.sort(projectDirectories);
+
+        return projectDirectories;
+    }
+
+    private static File resolve(final File baseDirectory, final String path) {
+        final File file = new File(path);
+        return file.isAbsolute() ? file : new File(baseDirectory, path);
+    }
+
+    /**
+     * @return the project's path relative to the base directory, with its separators replaced, so projects with the same name don't share a report
+     */
+    private static String getReportName(final File baseDirectory, final File projectDirectory) {
+        String path = projectDirectory.getAbsolutePath();
+        final String basePath = baseDirectory.getAbsolutePath() + File.separatorChar;
+
+        if (path.startsWith(basePath)) {
+            path = path.substring(basePath.length());
+        }
+
+        while (path.startsWith(File.separator)) {
+            path = path.substring(1);
+        }
+
+        return path.replace(File.separatorChar, '-');
+    }
+
+    /**
+     * Scans a project, writing its report to a file.
+     */
+    private static class ProjectTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final File mProjectDirectory;
+        private final File mReportFile;
+        private final String mReportFormat;
+        private final boolean mIsAosp;
+        private final boolean mUseCache;
+        private final ForkJoinPool mForkJoinPool;
+
+        public ProjectTask(final File projectDirectory, final File reportFile, final String reportFormat, final boolean isAosp, final boolean useCache,
+                final ForkJoinPool forkJoinPool) {
+            super();
+            mProjectDirectory = projectDirectory;
+            mReportFile = reportFile;
+            mReportFormat = reportFormat;
+            mIsAosp = isAosp;
+            mUseCache = useCache;
+            mForkJoinPool = forkJoinPool;
+        }
+
+        public File getProjectDirectory() {
+            return mProjectDirectory;
+        }
+
+        public File getReportFile() {
+            return mReportFile;
+        }
+
+        @Override
+        protected Integer compute() {
+            final PrintStream output;
+
+            try {
+                output = new PrintStream(new BufferedOutputStream(new FileOutputStream(mReportFile), 64 * 1024), false, "UTF-8");
+            } catch (final IOException e) {
+                System.err.println("Unable to write " + mReportFile.getAbsolutePath());
+                return -1;
+            }
+
+            try {
+                final ResourceScanner resourceScanner = new ResourceScanner(mProjectDirectory.getPath());
+                return resourceScanner.runBatch(mReportFormat, mIsAosp, mUseCache, mForkJoinPool, output);
+            } finally {
+                output.close();
+
+                if (output.checkError()) {
+                    System.err.println("There was a problem writing " + mReportFile.getAbsolutePath());
+                }
+            }
+        }
+    }
+}
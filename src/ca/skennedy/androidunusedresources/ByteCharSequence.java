@@ -0,0 +1,98 @@
+package ca.skennedy.androidunusedresources;
+
+/**
+ * <p>
+ * A {@link CharSequence} view of a range of bytes, where each byte is a single character.
+ * </p>
+ * <p>
+ * This lets ASCII and UTF-8 files be matched without decoding them. Every character that matters when looking for resources (markup, quotes, and the names
+ * themselves) is ASCII, and no byte of a multi-byte UTF-8 character is ever an ASCII byte, so matches are the same as they would be on the decoded text.
+ * </p>
+ * <p>
+ * The bytes of non-ASCII characters are all exposed as {@link #NON_ASCII}, rather than as Latin-1 characters. Some of those, such as the 0x85 byte inside
+ * many UTF-8 characters, are line terminators to {@link java.util.regex.Pattern}, so <code>.</code> wouldn't match them as it matches the decoded character.
+ * </p>
+ */
+public class ByteCharSequence implements CharSequence {
+    /**
+     * The character every non-ASCII byte is exposed as. It isn't a line terminator, whitespace, or part of a name.
+     */
+    public static final char NON_ASCII = '\ufffd';
+
+    private final byte[] mBytes;
+    private final int mOffset;
+    private final int mLength;
+
+    public ByteCharSequence(final byte[] bytes, final int offset, final int length) {
+        super();
+        mBytes = bytes;
+        mOffset = offset;
+        mLength = length;
+    }
+
+    @Override
+    public int length() {
+        return mLength;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (index < 0 || index >= mLength) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+
+        return toChar(mBytes[mOffset + index]);
+    }
+
+    private static char toChar(final byte b) {
+        return b < 0 ? NON_ASCII : (char) b;
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        if (start < 0 || end > mLength || start > end) {
+            throw new IndexOutOfBoundsException(start + ", " + end);
+        }
+
+        return new ByteCharSequence(mBytes, mOffset + start, end - start);
+    }
+
+    public int indexOf(final char c, final int fromIndex) {
+        final int end = mOffset + mLength;
+
+        if (c > 0x7f) {
+            if (c != NON_ASCII) {
+                return -1;
+            }
+
+            for (int i = mOffset + Math.max(fromIndex, 0); i < end; i++) {
+                if (mBytes[i] < 0) {
+                    return i - mOffset;
+                }
+            }
+
+            return -1;
+        }
+
+        final byte b = (byte) c;
+
+        for (int i = mOffset + Math.max(fromIndex, 0); i < end; i++) {
+            if (mBytes[i] == b) {
+                return i - mOffset;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        final char[] chars = new char[mLength];
+
+        for (int i = 0; i < mLength; i++) {
+            chars[i] = toChar(mBytes[mOffset + i]);
+        }
+
+        return new String(chars);
+    }
+}
@@ -0,0 +1,69 @@
+package ca.skennedy.androidunusedresources;
+
+/**
+ * The {@link String} search methods, for file contents that are only available as a {@link CharSequence}.
+ */
+public class CharSequenceUtilities {
+    private CharSequenceUtilities() {
+        super();
+    }
+
+    public static int indexOf(final CharSequence sequence, final char c) {
+        return indexOf(sequence, c, 0);
+    }
+
+    public static int indexOf(final CharSequence sequence, final char c, final int fromIndex) {
+        if (sequence instanceof ByteCharSequence) {
+            return ((ByteCharSequence) sequence).indexOf(c, fromIndex);
+        }
+
+        if (sequence instanceof String) {
+            return ((String) sequence).indexOf(c, fromIndex);
+        }
+
+        final int length = sequence.length();
+
+        for (int i = Math.max(fromIndex, 0); i < length; i++) {
+            if (sequence.charAt(i) == c) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public static int indexOf(final CharSequence sequence, final String string) {
+        return indexOf(sequence, string, 0);
+    }
+
+    public static int indexOf(final CharSequence sequence, final String string, final int fromIndex) {
+        if (string.length() == 0) {
+            return Math.min(Math.max(fromIndex, 0), sequence.length());
+        }
+
+        final char first = string.charAt(0);
+        final int last = sequence.length() - string.length();
+
+        for (int i = indexOf(sequence, first, fromIndex); i >= 0 && i <= last; i = indexOf(sequence, first, i + 1)) {
+            if (startsWith(sequence, string, i)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public static boolean startsWith(final CharSequence sequence, final String prefix, final int offset) {
+        if (offset < 0 || offset + prefix.length() > sequence.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length(); i++) {
+            if (sequence.charAt(offset + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
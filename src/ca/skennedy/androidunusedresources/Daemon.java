@@ -0,0 +1,436 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <p>
+ * Keeps a scanner per project in memory and answers queries about them over a socket on the loopback interface, so an IDE or a commit hook doesn't pay for
+ * starting and warming up a JVM on every scan. Scanning a project again only extracts from the files that changed since its last scan.
+ * </p>
+ * <p>
+ * Any local process can connect to the port, so a client must first send the daemon's token, a line of random hex that the daemon writes on startup to
+ * <code>.unused-resources-cache/daemon.token</code> in the directory it was started in, and is answered with the status <code>ok</code>. Only the user
+ * that started the daemon can read the file. A connection that sends the wrong token, or any line that isn't a request, gets an error and is closed, so
+ * another protocol's client (such as a browser sent to the port by a web page) can't keep talking to it.
+ * </p>
+ * <p>
+ * Each request is a line, and each response is a status line, <code>ok</code> or <code>error</code> followed by a message, then any results a line each,
+ * then an empty line. A project is a directory relative to the directory the daemon was started in, and is scanned the first time it's queried. The
+ * requests are:
+ * </p>
+ *
+ * <pre>
+ * scan PROJECT                 Scans the project again
+ * used TYPE/NAME PROJECT       Whether the resource was used in the last scan: ok used or ok unused
+ * unused TYPE|* PROJECT        The unused resources of a type, or of every type, as TYPE/NAME
+ * projects                     The projects that have been scanned
+ * forget PROJECT               Discards a project's scanner
+ * quit                         Closes the connection
+ * shutdown                     Stops the daemon
+ * </pre>
+ */
+public class Daemon {
+    public static final String TOKEN_FILE_NAME = "daemon.token";
+
+    private static final String UNKNOWN_REQUEST = "error Unknown request";
+    private static final String NOT_SCANNED = "error Not scanned";
+
+    private static final Charset sCharset = Charset.forName("US-ASCII");
+
+    private final File mBaseDirectory;
+    private final boolean mIsAosp;
+    private final boolean mUseCache;
+    private final ForkJoinPool mForkJoinPool;
+
+    /**
+     * Project directory->Scanner. Each scanner is only used by one connection at a time.
+     */
+    private final ConcurrentHashMap<File, ResourceScanner> mScanners = new ConcurrentHashMap<File, ResourceScanner>();
+
+    private final ExecutorService mConnections = Executors.newCachedThreadPool();
+
+    private ServerSocket mServerSocket = null;
+
+    private final byte[] mToken = createToken();
+
+    /**
+     * @param forkJoinPool
+     *            The pool every project is scanned on, or null to scan on the connection's thread
+     */
+    public Daemon(final File baseDirectory, final boolean isAosp, final boolean useCache, final ForkJoinPool forkJoinPool) {
+        super();
+        mBaseDirectory = baseDirectory;
+        mIsAosp = isAosp;
+        mUseCache = useCache;
+        mForkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * Listens for connections until a shutdown request.
+     *
+     * @param port
+     *            The port to listen on, or 0 for any free port
+     */
+    public void run(final int port) throws IOException {
+        mServerSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+        final File tokenFile = new File(new File(mBaseDirectory, ReferenceCache.DIRECTORY_NAME), TOKEN_FILE_NAME);
+
+        try {
+            writeToken(tokenFile);
+        } catch (final IOException e) {
+            mServerSocket.close();
+            throw e;
+        }
+
+        System.out.println("Listening on " + mServerSocket.getInetAddress().getHostAddress() + ":" + mServerSocket.getLocalPort() + ", token in "
+                + tokenFile.getAbsolutePath());
+
+        try {
+            while (true) {
+                final Socket socket;
+
+                try {
+                    socket = mServerSocket.accept();
+                } catch (final SocketException e) {
+                    // The server socket was closed by a shutdown request
+                    break;
+                }
+
+                mConnections.execute(new Connection(socket));
+            }
+        } finally {
+            mServerSocket.close();
+            mConnections.shutdownNow();
+            tokenFile.delete();
+        }
+    }
+
+    private static byte[] createToken() {
+        final byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+
+        final StringBuilder token = new StringBuilder(bytes.length * 2);
+
+        for (final byte b : bytes) {
+            token.append(String.format("%02x", b & 0xff));
+        }
+
+        return token.toString().getBytes(sCharset);
+    }
+
+    /**
+     * Writes the token to a file only the current user can read. The file is created with those permissions, rather than restricted after it's written, so
+     * there's no moment when another user could read it.
+     */
+    private void writeToken(final File tokenFile) throws IOException {
+        final File directory = tokenFile.getParentFile();
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory.getAbsolutePath());
+        }
+
+        final Path tokenPath = tokenFile.toPath();
+        Files.deleteIfExists(tokenPath);
+
+        if (tokenPath.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(tokenPath, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(tokenPath);
+
+            // Without POSIX permissions, at least take away everyone else's
+            tokenFile.setReadable(false, false);
+            tokenFile.setWritable(false, false);
+            tokenFile.setReadable(true, true);
+            tokenFile.setWritable(true, true);
+        }
+
+        Files.write(tokenPath, mToken);
+    }
+
+    /**
+     * Compares in constant time, so the token can't be guessed a byte at a time from how long the comparison takes.
+     */
+    private boolean isToken(final String line) {
+        return MessageDigest.isEqual(mToken, line.trim().getBytes(sCharset));
+    }
+
+    /**
+     * Handles a request.
+     *
+     * @param results
+     *            The lines of the results are added to this
+     * @return the status line
+     */
+    String handle(final String request, final List<String> results) {
+        final String[] arguments = request.trim().split("\\s+", 3);
+        final String command = arguments[0];
+
+        if (command.equals("projects")) {
+            for (final File projectDirectory : mScanners.keySet()) {
+                results.add(projectDirectory.getPath());
+            }
+
+            Collections.sort(results);
+            return "ok " + results.size() + " projects";
+        } else if (command.equals("scan") && arguments.length >= 2) {
+            final StringBuilder status = new StringBuilder();
+            scan(getProjectDirectory(request, 1), status);
+            return status.toString();
+        } else if (command.equals("forget") && arguments.length >= 2) {
+            return mScanners.remove(getProjectDirectory(request, 1)) != null ? "ok" : NOT_SCANNED;
+        } else if (command.equals("used") && arguments.length == 3) {
+            final int separator = arguments[1].indexOf('/');
+
+            if (separator < 0) {
+                return "error Expected TYPE/NAME";
+            }
+
+            return isUsed(getProjectDirectory(request, 2), arguments[1].substring(0, separator), arguments[1].substring(separator + 1));
+        } else if (command.equals("unused") && arguments.length == 3) {
+            return findUnused(getProjectDirectory(request, 2), arguments[1].equals("*") ? null : arguments[1], results);
+        }
+
+        return UNKNOWN_REQUEST + ": " + request;
+    }
+
+    /**
+     * @return the project named by the rest of the request after the first arguments, which may contain spaces
+     */
+    private File getProjectDirectory(final String request, final int argument) {
+        final String path = request.trim().split("\\s+", argument + 1)[argument];
+        File projectDirectory = new File(path);
+
+        if (!projectDirectory.isAbsolute()) {
+            projectDirectory = new File(mBaseDirectory, path);
+        }
+
+        try {
+            return projectDirectory.getCanonicalFile();
+        } catch (final IOException e) {
+            return projectDirectory.getAbsoluteFile();
+        }
+    }
+
+    /**
+     * Scans a project, with a new scanner if it hasn't been scanned. A new scanner is locked before it's added, so no other request sees it before its first
+     * scan.
+     *
+     * @param status
+     *            The status line is appended to this
+     * @return the scanner, or null if the project couldn't be scanned
+     */
+    private ResourceScanner scan(final File projectDirectory, final StringBuilder status) {
+        final ResourceScanner newResourceScanner = new ResourceScanner(projectDirectory.getPath());
+        final ResourceScanner existingResourceScanner;
+
+        synchronized (newResourceScanner) {
+            existingResourceScanner = mScanners.putIfAbsent(projectDirectory, newResourceScanner);
+
+            if (existingResourceScanner == null) {
+                return rescan(projectDirectory, newResourceScanner, status);
+            }
+        }
+
+        synchronized (existingResourceScanner) {
+            if (mScanners.get(projectDirectory) != existingResourceScanner) {
+                // Forgotten, or its first scan failed, while this request waited
+                status.append(NOT_SCANNED);
+                return null;
+            }
+
+            return rescan(projectDirectory, existingResourceScanner, status);
+        }
+    }
+
+    /**
+     * Must be called with the scanner locked. A scanner whose scan fails is discarded.
+     */
+    private ResourceScanner rescan(final File projectDirectory, final ResourceScanner resourceScanner, final StringBuilder status) {
+        final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        final long startTime = System.currentTimeMillis();
+
+        if (!resourceScanner.rescan(mIsAosp, mUseCache, mForkJoinPool, new PrintStream(errors, true))) {
+            mScanners.remove(projectDirectory, resourceScanner);
+            status.append("error ").append(errors.toString().trim().replace('\n', ' '));
+            return null;
+        }
+
+        status.append("ok ").append(resourceScanner.getResourceTable().size()).append(" resources, ")
+                .append(resourceScanner.getUnusedResources().cardinality()).append(" unused, scanned in ").append(System.currentTimeMillis() - startTime)
+                .append("ms");
+        return resourceScanner;
+    }
+
+    /**
+     * @param status
+     *            Why the project couldn't be scanned is appended to this
+     * @return the project's scanner, scanning the project first if it hasn't been, or null if it couldn't be scanned
+     */
+    private ResourceScanner getResourceScanner(final File projectDirectory, final StringBuilder status) {
+        final ResourceScanner resourceScanner = mScanners.get(projectDirectory);
+        return resourceScanner != null ? resourceScanner : scan(projectDirectory, status);
+    }
+
+    private String isUsed(final File projectDirectory, final String type, final String name) {
+        final StringBuilder status = new StringBuilder();
+        final ResourceScanner resourceScanner = getResourceScanner(projectDirectory, status);
+
+        if (resourceScanner == null) {
+            return status.toString();
+        }
+
+        synchronized (resourceScanner) {
+            if (mScanners.get(projectDirectory) != resourceScanner) {
+                return NOT_SCANNED;
+            }
+
+            final int id = resourceScanner.getResourceTable().getId(type, name);
+
+            if (id < 0) {
+                return "error No such resource: " + type + "/" + name;
+            }
+
+            return resourceScanner.getUnusedResources().get(id) ? "ok unused" : "ok used";
+        }
+    }
+
+    /**
+     * @param type
+     *            The type of resources to list, or null to list every type
+     */
+    private String findUnused(final File projectDirectory, final String type, final List<String> results) {
+        final StringBuilder status = new StringBuilder();
+        final ResourceScanner resourceScanner = getResourceScanner(projectDirectory, status);
+
+        if (resourceScanner == null) {
+            return status.toString();
+        }
+
+        synchronized (resourceScanner) {
+            if (mScanners.get(projectDirectory) != resourceScanner) {
+                return NOT_SCANNED;
+            }
+
+            final ResourceTable resourceTable = resourceScanner.getResourceTable();
+            final BitSet unusedResources = resourceScanner.getUnusedResources();
+
+            for (int id = unusedResources.nextSetBit(0); id >= 0; id = unusedResources.nextSetBit(id + 1)) {
+                if (type == null || resourceTable.getType(id).equals(type)) {
+                    results.add(resourceTable.getType(id) + "/" + resourceTable.getName(id));
+                }
+            }
+        }
+
+        Collections.sort(results);
+        return "ok " + results.size() + " unused resources";
+    }
+
+    /**
+     * Reads requests from a connection until it's closed, or asks to quit or shut down.
+     */
+    private class Connection implements Runnable {
+        private final Socket mSocket;
+
+        public Connection(final Socket socket) {
+            super();
+            mSocket = socket;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(mSocket.getInputStream(), "UTF-8"));
+                final Writer writer = new BufferedWriter(new OutputStreamWriter(mSocket.getOutputStream(), "UTF-8"));
+
+                final String token = reader.readLine();
+
+                if (token == null || !isToken(token)) {
+                    writer.write("error Not authorized\n\n");
+                    writer.flush();
+                    return;
+                }
+
+                writer.write("ok\n\n");
+                writer.flush();
+
+                for (String request = reader.readLine(); request != null; request = reader.readLine()) {
+                    if (request.trim().length() == 0) {
+                        continue;
+                    }
+
+                    if (request.trim().equals("quit")) {
+                        break;
+                    }
+
+                    if (request.trim().equals("shutdown")) {
+                        writer.write("ok\n\n");
+                        writer.flush();
+                        mServerSocket.close();
+                        break;
+                    }
+
+                    final List<String> results = new ArrayList<String>();
+                    String status;
+
+                    try {
+                        status = handle(request, results);
+                    } catch (final RuntimeException e) {
+                        // A request that breaks the scanner shouldn't take the daemon down
+                        e.printStackTrace();
+                        status = "error " + e;
+                    }
+
+                    writer.write(status);
+                    writer.write('\n');
+
+                    for (final String result : results) {
+                        writer.write(result);
+                        writer.write('\n');
+                    }
+
+                    writer.write('\n');
+                    writer.flush();
+
+                    if (status.startsWith(UNKNOWN_REQUEST)) {
+                        break;
+                    }
+                }
+            } catch (final IOException e) {
+                // The client went away
+            } finally {
+                try {
+                    mSocket.close();
+                } catch (final IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
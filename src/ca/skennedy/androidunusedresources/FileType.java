@@ -1,25 +1,72 @@
 package ca.skennedy.androidunusedresources;
 
-import java.util.regex.Pattern;
+/**
+ * A kind of file that can reference resources, along with the lexer used to pull those references out of it.
+ */
+public abstract class FileType {
+    public interface ReferenceListener {
+        /**
+         * Called for every resource reference in a file, including repeated references to the same resource.
+         *
+         * @param resource
+         *            The referenced resource, with the name as it appears in R.java
+         * @param position
+         *            The index in the file where the reference starts
+         */
+        void onReference(Resource resource, int position);
+    }
 
-public class FileType {
     private final String mExtension;
-    private final String mUsage;
-
-    public static final String USAGE_TYPE = "{type}";
-    public static final String USAGE_NAME = "{name}";
 
-    public FileType(final String extension, final String usage) {
+    public FileType(final String extension) {
         super();
         mExtension = extension;
-        mUsage = usage;
     }
 
     public String getExtension() {
         return mExtension;
     }
 
-    public Pattern getPattern(final String type, final String name) {
-        return Pattern.compile(mUsage.replace(USAGE_TYPE, type).replace(USAGE_NAME, name));
+    /**
+     * Extracts every resource reference from a file in a single pass. References are added using the name as it appears in R.java (i.e. a style referenced as
+     * <code>Parent.Child</code> is added as <code>Parent_Child</code>).
+     *
+     * @param fileContents
+     *            The contents of the file
+     * @param listener
+     *            Told about each reference as it's found
+     */
+    public abstract void findReferences(CharSequence fileContents, ReferenceListener listener);
+
+    protected static boolean isTypeCharacter(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    protected static boolean isWordCharacter(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * Reads a run of type characters.
+     *
+     * @return the index of the first character after the type
+     */
+    protected static int skipType(final CharSequence fileContents, final int start) {
+        final int length = fileContents.length();
+
+        int position = start;
+
+        while (position < length && isTypeCharacter(fileContents.charAt(position))) {
+            position++;
+        }
+
+        return position;
+    }
+
+    /**
+     * Converts a name as it was written in a file to the name used in R.java.
+     */
+    protected static String getResourceName(final CharSequence fileContents, final int start, final int end) {
+        return fileContents.subSequence(start, end).toString().replace('.', '_');
     }
 }
@@ -6,39 +6,129 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class FileUtilities {
     private FileUtilities() {
         super();
     }
 
-    public static String getFileContents(final File file) throws IOException {
-        final InputStream inputStream = new FileInputStream(file);
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+    /**
+     * Files up to this size are read into a buffer that's kept for the next read on the same thread. Larger files get a buffer of their own.
+     */
+    private static final int MAX_REUSED_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The number of files and bytes read from the project, for profiling
+     */
+    private static final AtomicLong sFilesRead = new AtomicLong();
+    private static final AtomicLong sBytesRead = new AtomicLong();
+
+    private static final ThreadLocal<byte[]> sBuffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[64 * 1024];
+        }
+    };
+
+    /**
+     * <p>
+     * Reads the contents of a file with the line terminators removed.
+     * </p>
+     * <p>
+     * Files are read through a {@link FileChannel} into a per-thread buffer and returned as a view of the raw bytes, without decoding them (see
+     * {@link ByteCharSequence}). Only files with a UTF-16 byte order mark are decoded. The view is only valid until the next call on the same thread, so it must
+     * not be kept; use {@link CharSequence#toString()} to keep any part of it.
+     * </p>
+     */
+    public static CharSequence getFileContents(final File file) throws IOException {
+        final FileInputStream inputStream = new FileInputStream(file);
+
+        try {
+            final FileChannel channel = inputStream.getChannel();
+            final long size = channel.size();
+
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file.getAbsolutePath() + " is too large to be read");
+            }
 
-        final StringBuilder stringBuilder = new StringBuilder();
+            byte[] bytes = sBuffers.get();
 
-        boolean done = false;
+            if (bytes.length < size) {
+                bytes = new byte[(int) Math.max(size, Math.min(bytes.length * 2L, MAX_REUSED_BUFFER_SIZE))];
 
-        while (!done) {
-            final String line = reader.readLine();
-            done = (line == null);
+                if (bytes.length <= MAX_REUSED_BUFFER_SIZE) {
+                    sBuffers.set(bytes);
+                }
+            }
 
-            if (line != null) {
-                stringBuilder.append(line);
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, (int) size);
+
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the file has been read or it ends early
+            }
+
+            final int length = buffer.position();
+            countRead(length);
+
+            if (length >= 2 && ((bytes[0] == (byte) 0xfe && bytes[1] == (byte) 0xff) || (bytes[0] == (byte) 0xff && bytes[1] == (byte) 0xfe))) {
+                return removeLineTerminators(new String(bytes, 0, length, "UTF-16"));
+            }
+
+            // Remove the line terminators in place
+            int end = 0;
+
+            for (int i = 0; i < length; i++) {
+                final byte b = bytes[i];
+
+                if (b != '\n' && b != '\r') {
+                    bytes[end++] = b;
+                }
             }
+
+            return new ByteCharSequence(bytes, 0, end);
+        } finally {
+            inputStream.close();
         }
+    }
 
-        reader.close();
-        inputStream.close();
+    /**
+     * Counts a file that was read without going through this class.
+     */
+    static void countRead(final long bytes) {
+        sFilesRead.incrementAndGet();
+        sBytesRead.addAndGet(bytes);
+    }
+
+    public static long getFilesRead() {
+        return sFilesRead.get();
+    }
+
+    public static long getBytesRead() {
+        return sBytesRead.get();
+    }
+
+    private static String removeLineTerminators(final String contents) {
+        final StringBuilder stringBuilder = new StringBuilder(contents.length());
+
+        for (int i = 0; i < contents.length(); i++) {
+            final char c = contents.charAt(i);
+
+            if (c != '\n' && c != '\r') {
+                stringBuilder.append(c);
+            }
+        }
 
         return stringBuilder.toString();
     }
 
     public static List<String> getFileLines(final File file) throws IOException {
         final InputStream inputStream = new FileInputStream(file);
+        countRead(file.length());
         final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
 
         final List<String> lines = new ArrayList<String>();
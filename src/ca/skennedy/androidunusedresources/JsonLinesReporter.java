@@ -0,0 +1,57 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * <p>
+ * A JSON object per line for each unused resource, so reports from many modules can be concatenated and read a line at a time:
+ * </p>
+ *
+ * <pre>
+ * {"project": "/path/to/app", "type": "drawable", "name": "icon", "declaredPaths": ["/path/to/app/res/drawable/icon.png"]}
+ * </pre>
+ */
+public class JsonLinesReporter extends Reporter {
+    private String mProject = null;
+
+    public JsonLinesReporter(final Writer writer) {
+        super(writer);
+    }
+
+    @Override
+    public void begin(final File projectDirectory, final int unusedResourceCount) {
+        // Quoted once, since it's repeated on every line
+        mProject = JsonUtilities.quote(projectDirectory.getAbsolutePath());
+    }
+
+    @Override
+    public void report(final Resource resource) throws IOException {
+        mWriter.write("{\"project\": ");
+        mWriter.write(mProject);
+        mWriter.write(", \"type\": ");
+        JsonUtilities.writeQuoted(mWriter, resource.getType());
+        mWriter.write(", \"name\": ");
+        JsonUtilities.writeQuoted(mWriter, resource.getName());
+        mWriter.write(", \"declaredPaths\": [");
+
+        boolean first = true;
+
+        for (final String path : resource.getDeclaredPaths()) {
+            if (!first) {
+                mWriter.write(", ");
+            }
+
+            JsonUtilities.writeQuoted(mWriter, path);
+            first = false;
+        }
+
+        mWriter.write("]}\n");
+    }
+
+    @Override
+    public void end() throws IOException {
+        mWriter.flush();
+    }
+}
@@ -0,0 +1,61 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * Writes JSON strings, for the profile and the machine readable reports.
+ */
+public class JsonUtilities {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private JsonUtilities() {
+        super();
+    }
+
+    public static String quote(final String value) {
+        final StringWriter writer = new StringWriter(value.length() + 2);
+
+        try {
+            writeQuoted(writer, value);
+        } catch (final IOException e) {
+            // A StringWriter doesn't throw
+            throw new IllegalStateException(e);
+        }
+
+        return writer.toString();
+    }
+
+    /**
+     * Writes a value as a JSON string, escaping it as it goes rather than building the quoted string first.
+     */
+    public static void writeQuoted(final Writer writer, final String value) throws IOException {
+        writer.write('"');
+
+        int start = 0;
+
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+
+            if (c != '"' && c != '\\' && c >= ' ') {
+                continue;
+            }
+
+            writer.write(value, start, i - start);
+            start = i + 1;
+
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else {
+                writer.write("\\u00");
+                writer.write(HEX_DIGITS[c >> 4]);
+                writer.write(HEX_DIGITS[c & 0xf]);
+            }
+        }
+
+        writer.write(value, start, value.length() - start);
+        writer.write('"');
+    }
+}
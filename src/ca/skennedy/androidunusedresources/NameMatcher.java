@@ -0,0 +1,196 @@
+package ca.skennedy.androidunusedresources;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * An Aho-Corasick automaton over a set of resource names, used to find every occurrence of every name in a single pass over a file.
+ * </p>
+ * <p>
+ * As with references, a '.' in the text matches a '_' in a name. The automaton is immutable once it's built, so it can be shared by the threads of a
+ * parallel walk; a new one is built for each scan.
+ * </p>
+ *
+ * @param <T>
+ *            The value associated with each name
+ */
+public class NameMatcher<T> {
+    public interface MatchListener<T> {
+        /**
+         * Called for every occurrence of a name.
+         *
+         * @param value
+         *            The value associated with the name
+         * @param start
+         *            The index of the first character of the occurrence
+         * @param end
+         *            The index after the last character of the occurrence
+         */
+        void onMatch(T value, int start, int end);
+    }
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    private final List<String> mNames = new ArrayList<String>();
+    private final List<T> mValues = new ArrayList<T>();
+
+    private final char[][] mLabels;
+    private final int[][] mTargets;
+    private final int[] mFailures;
+    private final int[] mOutputs;
+    private final int[] mOutputLinks;
+
+    public NameMatcher(final Map<String, T> names) {
+        super();
+
+        for (final Map.Entry<String, T> entry : names.entrySet()) {
+            mNames.add(entry.getKey());
+            mValues.add(entry.getValue());
+        }
+
+        // Build the trie over the names
+        final List<TreeMap<Character, Integer>> children = new ArrayList<TreeMap<Character, Integer>>();
+        final List<Integer> outputs = new ArrayList<Integer>();
+
+        children.add(new TreeMap<Character, Integer>());
+        outputs.add(NONE);
+
+        for (int index = 0; index < mNames.size(); index++) {
+            final String name = mNames.get(index);
+
+            int node = ROOT;
+
+            for (int i = 0; i < name.length(); i++) {
+                final Character c = name.charAt(i);
+                Integer child = children.get(node).get(c);
+
+                if (child == null) {
+                    child = children.size();
+                    children.add(new TreeMap<Character, Integer>());
+                    outputs.add(NONE);
+                    children.get(node).put(c, child);
+                }
+
+                node = child;
+            }
+
+            outputs.set(node, index);
+        }
+
+        final int nodeCount = children.size();
+
+        mLabels = new char[nodeCount][];
+        mTargets = new int[nodeCount][];
+        mFailures = new int[nodeCount];
+        mOutputs = new int[nodeCount];
+        mOutputLinks = new int[nodeCount];
+
+        for (int node = 0; node < nodeCount; node++) {
+            final TreeMap<Character, Integer> nodeChildren = children.get(node);
+
+            mLabels[node] = new char[nodeChildren.size()];
+            mTargets[node] = new int[nodeChildren.size()];
+
+            int i = 0;
+            for (final Map.Entry<Character, Integer> entry : nodeChildren.entrySet()) {
+                mLabels[node][i] = entry.getKey();
+                mTargets[node][i] = entry.getValue();
+                i++;
+            }
+
+            mOutputs[node] = outputs.get(node);
+        }
+
+        buildFailures();
+    }
+
+    /**
+     * Reports every occurrence of every name in the text.
+     */
+    public void findMatches(final CharSequence text, final MatchListener<T> listener) {
+        final int length = text.length();
+
+        int state = ROOT;
+
+        for (int i = 0; i < length; i++) {
+            final char c = normalize(text.charAt(i));
+
+            if (!FileType.isWordCharacter(c)) {
+                // No name contains this character
+                state = ROOT;
+                continue;
+            }
+
+            int next = getTarget(state, c);
+
+            while (next == NONE && state != ROOT) {
+                state = mFailures[state];
+                next = getTarget(state, c);
+            }
+
+            state = next == NONE ? ROOT : next;
+
+            for (int node = mOutputs[state] != NONE ? state : mOutputLinks[state]; node != NONE; node = mOutputLinks[node]) {
+                final int index = mOutputs[node];
+                listener.onMatch(mValues.get(index), i + 1 - mNames.get(index).length(), i + 1);
+            }
+        }
+    }
+
+    private static char normalize(final char c) {
+        return c == '.' ? '_' : c;
+    }
+
+    private int getTarget(final int node, final char c) {
+        final char[] labels = mLabels[node];
+
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] == c) {
+                return mTargets[node][i];
+            }
+        }
+
+        return NONE;
+    }
+
+    private void buildFailures() {
+        // Breadth first, so every failure target is complete before it's needed
+        mFailures[ROOT] = ROOT;
+        mOutputLinks[ROOT] = NONE;
+
+        final Queue<Integer> queue = new LinkedList<Integer>();
+        queue.add(ROOT);
+
+        while (!queue.isEmpty()) {
+            final int node = queue.remove();
+
+            for (int i = 0; i < mLabels[node].length; i++) {
+                final char c = mLabels[node][i];
+                final int child = mTargets[node][i];
+
+                int failure = NONE;
+
+                if (node != ROOT) {
+                    int state = mFailures[node];
+                    failure = getTarget(state, c);
+
+                    while (failure == NONE && state != ROOT) {
+                        state = mFailures[state];
+                        failure = getTarget(state, c);
+                    }
+                }
+
+                mFailures[child] = failure == NONE ? ROOT : failure;
+                mOutputLinks[child] = mOutputs[mFailures[child]] != NONE ? mFailures[child] : mOutputLinks[mFailures[child]];
+
+                queue.add(child);
+            }
+        }
+    }
+}
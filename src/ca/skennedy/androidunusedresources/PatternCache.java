@@ -0,0 +1,107 @@
+package ca.skennedy.androidunusedresources;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * A bounded cache of compiled patterns, which can be read by many threads without locking. The hit and miss counts can be used to size it.
+ * </p>
+ * <p>
+ * The checks ask for every resource's patterns once per file, in the same order each time. Evicting the least recently used pattern would evict each one just
+ * before it was needed again, so once the cache is full it keeps what it has and new patterns are compiled without being cached. The bound may be overshot by
+ * a few patterns when threads add them at the same time.
+ * </p>
+ * <p>
+ * The patterns are only needed for values files that the {@link ValuesIndex} couldn't parse, so most scans don't compile any.
+ * </p>
+ */
+public class PatternCache {
+    private final Map<String, Pattern> mPatterns = new ConcurrentHashMap<String, Pattern>();
+
+    private volatile int mMaximumSize;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mUncached = new AtomicLong();
+
+    public PatternCache(final int maximumSize) {
+        super();
+        mMaximumSize = maximumSize;
+    }
+
+    /**
+     * Gets the compiled form of a regular expression, compiling it if it isn't cached.
+     */
+    public Pattern getPattern(final String regex) {
+        final Pattern cachedPattern = mPatterns.get(regex);
+
+        if (cachedPattern != null) {
+            mHits.incrementAndGet();
+            return cachedPattern;
+        }
+
+        mMisses.incrementAndGet();
+
+        // Two threads may compile the same pattern, which is harmless
+        final Pattern pattern = Pattern.compile(regex);
+
+        if (mPatterns.size() < mMaximumSize) {
+            mPatterns.put(regex, pattern);
+        } else {
+            mUncached.incrementAndGet();
+        }
+
+        return pattern;
+    }
+
+    public void setMaximumSize(final int maximumSize) {
+        mMaximumSize = maximumSize;
+
+        // Shrink to the new size
+        final Iterator<String> regexes = mPatterns.keySet().iterator();
+
+        while (mPatterns.size() > mMaximumSize && regexes.hasNext()) {
+            regexes.next();
+            regexes.remove();
+        }
+    }
+
+    /**
+     * Empties the cache, keeping its counters. The scanner empties it before each scan, as the patterns are built from a project's resource names.
+     */
+    public void clear() {
+        mPatterns.clear();
+    }
+
+    public int getMaximumSize() {
+        return mMaximumSize;
+    }
+
+    public int size() {
+        return mPatterns.size();
+    }
+
+    public long getHits() {
+        return mHits.get();
+    }
+
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * @return the number of patterns that were compiled but not cached, because the cache was full
+     */
+    public long getUncached() {
+        return mUncached.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%d patterns, %d hits, %d misses, %d not cached", mPatterns.size(), mMaximumSize, getHits(), getMisses(), getUncached());
+    }
+}
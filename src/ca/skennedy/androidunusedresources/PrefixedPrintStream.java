@@ -0,0 +1,33 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.PrintStream;
+
+/**
+ * Prints every line to another stream with a prefix, so the errors of the projects in a batch can share standard error and still be told apart. Each line
+ * is printed in one call, so lines from different projects don't interleave, though the lines of a stack trace may.
+ */
+public class PrefixedPrintStream extends PrintStream {
+    private final PrintStream mOutput;
+    private final String mPrefix;
+
+    public PrefixedPrintStream(final PrintStream output, final String prefix) {
+        super(output, true);
+        mOutput = output;
+        mPrefix = prefix;
+    }
+
+    @Override
+    public void println(final String line) {
+        mOutput.println(mPrefix + line);
+    }
+
+    @Override
+    public void println(final Object line) {
+        println(String.valueOf(line));
+    }
+
+    @Override
+    public void println() {
+        println("");
+    }
+}
@@ -0,0 +1,244 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Records what each phase of a scan costs: wall and CPU time, files and bytes read, regular expressions compiled and evaluated through the
+ * {@link PatternCache}, and bytes allocated. The results are written as JSON.
+ * </p>
+ * <p>
+ * CPU time and allocation are summed over every live thread, so they include the fork/join pool's workers. A phase that is entered more than once adds to
+ * its earlier totals. When profiling is disabled, {@link #begin(String)} and {@link #end()} do nothing.
+ * </p>
+ */
+public class Profiler {
+    private final boolean mEnabled;
+
+    /**
+     * Phase->(Totals)
+     */
+    private final Map<String, Sample> mPhases = new LinkedHashMap<String, Sample>();
+
+    private final Map<String, Object> mProperties = new LinkedHashMap<String, Object>();
+
+    private String mPhase = null;
+    private Sample mPhaseStart = null;
+
+    public Profiler(final boolean enabled) {
+        super();
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Starts a phase, ending the current one if there is one.
+     */
+    public void begin(final String phase) {
+        if (!mEnabled) {
+            return;
+        }
+
+        end();
+
+        mPhase = phase;
+        mPhaseStart = Sample.take();
+    }
+
+    public void end() {
+        if (!mEnabled || mPhase == null) {
+            return;
+        }
+
+        final Sample phaseCost = Sample.take().minus(mPhaseStart);
+        final Sample totals = mPhases.get(mPhase);
+
+        mPhases.put(mPhase, totals == null ? phaseCost : totals.plus(phaseCost));
+
+        mPhase = null;
+        mPhaseStart = null;
+    }
+
+    /**
+     * Records a value about the whole scan, such as the number of resources, which is written alongside the phases.
+     */
+    public void setProperty(final String name, final Object value) {
+        mProperties.put(name, value);
+    }
+
+    /**
+     * @return Phase->(Wall time in milliseconds), in the order the phases were first entered
+     */
+    public Map<String, Long> getPhaseTimes() {
+        final Map<String, Long> phaseTimes = new LinkedHashMap<String, Long>();
+
+        for (final Map.Entry<String, Sample> phase : mPhases.entrySet()) {
+            phaseTimes.put(phase.getKey(), phase.getValue().mWallNanos / 1000000);
+        }
+
+        return phaseTimes;
+    }
+
+    public void write(final File file) throws IOException {
+        final Writer writer = new BufferedWriter(new FileWriter(file));
+
+        try {
+            writer.write(toJson());
+        } finally {
+            writer.close();
+        }
+    }
+
+    public String toJson() {
+        final StringBuilder json = new StringBuilder("{\n");
+
+        for (final Map.Entry<String, Object> property : mProperties.entrySet()) {
+            json.append("  ").append(JsonUtilities.quote(property.getKey())).append(": ");
+
+            if (property.getValue() instanceof Number || property.getValue() instanceof Boolean) {
+                json.append(property.getValue());
+            } else {
+                json.append(JsonUtilities.quote(String.valueOf(property.getValue())));
+            }
+
+            json.append(",\n");
+        }
+
+        json.append("  \"phases\": [");
+
+        Sample total = new Sample(0, 0, 0, 0, 0, 0, 0);
+        boolean first = true;
+
+        for (final Map.Entry<String, Sample> phase : mPhases.entrySet()) {
+            json.append(first ? "\n" : ",\n");
+            json.append("    {\"name\": ").append(JsonUtilities.quote(phase.getKey())).append(", ");
+            phase.getValue().appendJson(json);
+            json.append('}');
+
+            total = total.plus(phase.getValue());
+            first = false;
+        }
+
+        json.append("\n  ],\n");
+        json.append("  \"total\": {");
+        total.appendJson(json);
+        json.append("}\n");
+        json.append("}\n");
+
+        return json.toString();
+    }
+
+    /**
+     * The counters at a point in time, or the difference between two points. CPU time and allocation are -1 if the JVM can't measure them.
+     */
+    private static class Sample {
+        private final long mWallNanos;
+        private final long mCpuNanos;
+        private final long mFilesRead;
+        private final long mBytesRead;
+        private final long mRegexCompilations;
+        private final long mRegexEvaluations;
+        private final long mAllocatedBytes;
+
+        public Sample(final long wallNanos, final long cpuNanos, final long filesRead, final long bytesRead, final long regexCompilations,
+                final long regexEvaluations, final long allocatedBytes) {
+            super();
+            mWallNanos = wallNanos;
+            mCpuNanos = cpuNanos;
+            mFilesRead = filesRead;
+            mBytesRead = bytesRead;
+            mRegexCompilations = regexCompilations;
+            mRegexEvaluations = regexEvaluations;
+            mAllocatedBytes = allocatedBytes;
+        }
+
+        public static Sample take() {
+            final PatternCache patternCache = ResourceType.getPatternCache();
+            final long misses = patternCache.getMisses();
+
+            return new Sample(System.nanoTime(), getCpuNanos(), FileUtilities.getFilesRead(), FileUtilities.getBytesRead(), misses,
+                    misses + patternCache.getHits(), getAllocatedBytes());
+        }
+
+        public Sample minus(final Sample start) {
+            return new Sample(mWallNanos - start.mWallNanos, subtract(mCpuNanos, start.mCpuNanos), mFilesRead - start.mFilesRead,
+                    mBytesRead - start.mBytesRead, mRegexCompilations - start.mRegexCompilations, mRegexEvaluations - start.mRegexEvaluations,
+                    subtract(mAllocatedBytes, start.mAllocatedBytes));
+        }
+
+        public Sample plus(final Sample other) {
+            return new Sample(mWallNanos + other.mWallNanos, add(mCpuNanos, other.mCpuNanos), mFilesRead + other.mFilesRead,
+                    mBytesRead + other.mBytesRead, mRegexCompilations + other.mRegexCompilations, mRegexEvaluations + other.mRegexEvaluations,
+                    add(mAllocatedBytes, other.mAllocatedBytes));
+        }
+
+        public void appendJson(final StringBuilder json) {
+            json.append("\"wallMillis\": ").append(mWallNanos / 1000000);
+            json.append(", \"cpuMillis\": ").append(mCpuNanos < 0 ? -1 : mCpuNanos / 1000000);
+            json.append(", \"filesRead\": ").append(mFilesRead);
+            json.append(", \"bytesRead\": ").append(mBytesRead);
+            json.append(", \"regexCompilations\": ").append(mRegexCompilations);
+            json.append(", \"regexEvaluations\": ").append(mRegexEvaluations);
+            json.append(", \"allocatedBytes\": ").append(mAllocatedBytes);
+        }
+
+        private static long subtract(final long end, final long start) {
+            return end < 0 || start < 0 ? -1 : Math.max(0, end - start);
+        }
+
+        private static long add(final long a, final long b) {
+            return a < 0 || b < 0 ? -1 : a + b;
+        }
+
+        private static long getCpuNanos() {
+            final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+            if (!threadBean.isThreadCpuTimeSupported() || !threadBean.isThreadCpuTimeEnabled()) {
+                return -1;
+            }
+
+            long cpuNanos = 0;
+
+            for (final long threadId : threadBean.getAllThreadIds()) {
+                // -1 if the thread has died since its id was read
+                cpuNanos += Math.max(0, threadBean.getThreadCpuTime(threadId));
+            }
+
+            return cpuNanos;
+        }
+
+        private static long getAllocatedBytes() {
+            final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+            // Only HotSpot's extension counts allocation
+            if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+                return -1;
+            }
+
+            final com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+
+            if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+                return -1;
+            }
+
+            long allocatedBytes = 0;
+
+            for (final long threadBytes : allocationBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())) {
+                allocatedBytes += Math.max(0, threadBytes);
+            }
+
+            return allocatedBytes;
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * An on-disk cache of what was extracted from each file: the resources it references and its special uses of resources (each keyed by the resource whose
+ * declaration they're in), and (for values files) the resources it declares. An entry is reused if the file's size and modification time are unchanged, or failing that, if its contents hash to the same value.
+ * </p>
+ * <p>
+ * Special uses depend on which names were being matched, so they're only kept while the fingerprint of the matched names is unchanged.
+ * </p>
+ */
+public class ReferenceCache {
+    public static final String DIRECTORY_NAME = ".unused-resources-cache";
+
+    private static final String FILE_NAME = "references.bin";
+
+    private static final int MAGIC = 0x55524546; // URef
+    private static final int VERSION = 3;
+
+    /**
+     * File systems can have a coarse modification time, so a file changed within this long of being checked can't be trusted by its modification time alone.
+     */
+    private static final long MODIFICATION_TIME_GRANULARITY = 2000;
+
+    public static class Entry {
+        private final long mSize;
+        private final long mModificationTime;
+        private final long mContentHash;
+
+        /**
+         * When the file was read to extract its contents or verify its hash
+         */
+        private final long mCheckedTime;
+
+        private volatile Map<Resource, Set<Resource>> mReferences = null;
+        private volatile Map<Resource, Set<Resource>> mSpecialUsages = null;
+        private volatile List<String[]> mDeclarations = null;
+
+        private Entry(final long size, final long modificationTime, final long contentHash, final long checkedTime) {
+            super();
+            mSize = size;
+            mModificationTime = modificationTime;
+            mContentHash = contentHash;
+            mCheckedTime = checkedTime;
+        }
+
+        /**
+         * @return every resource referenced by the file, keyed by the resource whose declaration contains the reference (null for none), or null if it
+         *         hasn't been extracted
+         */
+        public Map<Resource, Set<Resource>> getReferences() {
+            return mReferences;
+        }
+
+        public void setReferences(final Map<Resource, Set<Resource>> references) {
+            mReferences = references;
+        }
+
+        /**
+         * @return every resource used by the file in a special way, keyed by the resource whose declaration contains the use (null for none), or null if it
+         *         hasn't been extracted
+         */
+        public Map<Resource, Set<Resource>> getSpecialUsages() {
+            return mSpecialUsages;
+        }
+
+        public void setSpecialUsages(final Map<Resource, Set<Resource>> specialUsages) {
+            mSpecialUsages = specialUsages;
+        }
+
+        /**
+         * @return the (type, name) of every resource declared by the file, or null if it hasn't been extracted
+         */
+        public List<String[]> getDeclarations() {
+            return mDeclarations;
+        }
+
+        public void setDeclarations(final List<String[]> declarations) {
+            mDeclarations = declarations;
+        }
+    }
+
+    private final File mDirectory;
+    private long mFingerprint;
+
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * The entries that were looked up or added during this run. Only these are saved, so files that no longer exist drop out of the cache.
+     */
+    private final Set<String> mLiveEntries = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private ReferenceCache(final File directory, final long fingerprint) {
+        super();
+        mDirectory = directory;
+        mFingerprint = fingerprint;
+    }
+
+    /**
+     * Creates a cache that's only kept in memory.
+     *
+     * @param fingerprint
+     *            Identifies the names that special uses were matched against
+     */
+    public static ReferenceCache create(final long fingerprint) {
+        return new ReferenceCache(null, fingerprint);
+    }
+
+    /**
+     * Loads the cache from a directory. If it doesn't exist or can't be read, the cache starts out empty.
+     *
+     * @param fingerprint
+     *            Identifies the names that special uses were matched against
+     * @param errors
+     *            Where to print that the cache couldn't be read
+     */
+    public static ReferenceCache load(final File directory, final long fingerprint, final PrintStream errors) {
+        final ReferenceCache cache = new ReferenceCache(directory, fingerprint);
+
+        final File file = new File(directory, FILE_NAME);
+
+        if (!file.exists()) {
+            return cache;
+        }
+
+        try {
+            final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            FileUtilities.countRead(file.length());
+
+            try {
+                cache.read(input);
+            } finally {
+                input.close();
+            }
+        } catch (final IOException e) {
+            errors.println("The cache in " + directory.getAbsolutePath() + " could not be read, so every file will be scanned.");
+            cache.mEntries.clear();
+        }
+
+        return cache;
+    }
+
+    public boolean isPersistent() {
+        return mDirectory != null;
+    }
+
+    /**
+     * Changes the names that special uses are matched against. If they've changed, every cached special use is discarded.
+     */
+    public void setFingerprint(final long fingerprint) {
+        if (fingerprint == mFingerprint) {
+            return;
+        }
+
+        mFingerprint = fingerprint;
+
+        for (final Entry entry : mEntries.values()) {
+            entry.mSpecialUsages = null;
+        }
+    }
+
+    /**
+     * Gets the entry for a file if its size and modification time haven't changed.
+     */
+    public Entry get(final File file) {
+        final String path = file.getAbsolutePath();
+        final Entry entry = mEntries.get(path);
+
+        if (entry == null || entry.mSize != file.length() || entry.mModificationTime != file.lastModified()
+                || entry.mModificationTime >= entry.mCheckedTime - MODIFICATION_TIME_GRANULARITY) {
+            return null;
+        }
+
+        mLiveEntries.add(path);
+        return entry;
+    }
+
+    /**
+     * Gets the entry for a file if its contents haven't changed, or creates an empty one if they have.
+     */
+    public Entry get(final File file, final long contentHash) {
+        final String path = file.getAbsolutePath();
+        final Entry entry = mEntries.get(path);
+
+        mLiveEntries.add(path);
+
+        if (entry != null && entry.mContentHash == contentHash) {
+            // Only the metadata changed, so keep what was extracted
+            final Entry updatedEntry = new Entry(file.length(), file.lastModified(), contentHash, System.currentTimeMillis());
+            updatedEntry.mReferences = entry.mReferences;
+            updatedEntry.mSpecialUsages = entry.mSpecialUsages;
+            updatedEntry.mDeclarations = entry.mDeclarations;
+
+            mEntries.put(path, updatedEntry);
+            return updatedEntry;
+        }
+
+        final Entry newEntry = new Entry(file.length(), file.lastModified(), contentHash, System.currentTimeMillis());
+        mEntries.put(path, newEntry);
+        return newEntry;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a file's contents.
+     */
+    public static long hash(final CharSequence contents) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < contents.length(); i++) {
+            hash ^= contents.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a binary file's contents, such as compiled symbols, whose bytes can't be read as characters.
+     */
+    public static long hash(final byte[] contents) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < contents.length; i++) {
+            hash ^= contents[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    public void save() throws IOException {
+        if (mDirectory == null) {
+            return;
+        }
+
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + mDirectory.getAbsolutePath());
+        }
+
+        // Write to a temporary file first, so an interrupted save doesn't leave a partial cache behind
+        final File file = new File(mDirectory, FILE_NAME);
+        final File temporaryFile = new File(mDirectory, FILE_NAME + ".tmp");
+
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 64 * 1024));
+
+        try {
+            write(output);
+        } finally {
+            output.close();
+        }
+
+        if (!temporaryFile.renameTo(file)) {
+            file.delete();
+
+            if (!temporaryFile.renameTo(file)) {
+                throw new IOException("Unable to replace " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * <pre>
+     * magic, version, fingerprint
+     * string count, strings
+     * entry count, entries:
+     *     path, size, modification time, content hash, checked time
+     *     references, special uses: owner count (-1 if not extracted), owners:
+     *         owner (type, name), or (-1, -1) for none
+     *         count, (type, name)...
+     *     declarations: count (-1 if not extracted), (type, name)...
+     * </pre>
+     *
+     * Every string is written once to the string table, and referred to by its index.
+     */
+    private void write(final DataOutputStream output) throws IOException {
+        final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+        final List<String> strings = new ArrayList<String>();
+        final List<String> paths = new ArrayList<String>();
+
+        for (final String path : mLiveEntries) {
+            final Entry entry = mEntries.get(path);
+
+            if (entry == null) {
+                continue;
+            }
+
+            paths.add(path);
+            addString(path, stringIndexes, strings);
+
+            for (final Map<Resource, Set<Resource>> resourceMap : getResourceMaps(entry)) {
+                if (resourceMap != null) {
+                    for (final Map.Entry<Resource, Set<Resource>> resources : resourceMap.entrySet()) {
+                        if (resources.getKey() != null) {
+                            addString(resources.getKey().getType(), stringIndexes, strings);
+                            addString(resources.getKey().getName(), stringIndexes, strings);
+                        }
+
+                        for (final Resource resource : resources.getValue()) {
+                            addString(resource.getType(), stringIndexes, strings);
+                            addString(resource.getName(), stringIndexes, strings);
+                        }
+                    }
+                }
+            }
+
+            if (entry.mDeclarations != null) {
+                for (final String[] declaration : entry.mDeclarations) {
+                    addString(declaration[0], stringIndexes, strings);
+                    addString(declaration[1], stringIndexes, strings);
+                }
+            }
+        }
+
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(mFingerprint);
+
+        output.writeInt(strings.size());
+
+        for (final String string : strings) {
+            output.writeUTF(string);
+        }
+
+        output.writeInt(paths.size());
+
+        for (final String path : paths) {
+            final Entry entry = mEntries.get(path);
+
+            output.writeInt(stringIndexes.get(path));
+            output.writeLong(entry.mSize);
+            output.writeLong(entry.mModificationTime);
+            output.writeLong(entry.mContentHash);
+            output.writeLong(entry.mCheckedTime);
+
+            for (final Map<Resource, Set<Resource>> resourceMap : getResourceMaps(entry)) {
+                if (resourceMap == null) {
+                    output.writeInt(-1);
+                } else {
+                    output.writeInt(resourceMap.size());
+
+                    for (final Map.Entry<Resource, Set<Resource>> resources : resourceMap.entrySet()) {
+                        final Resource owner = resources.getKey();
+
+                        output.writeInt(owner == null ? -1 : stringIndexes.get(owner.getType()));
+                        output.writeInt(owner == null ? -1 : stringIndexes.get(owner.getName()));
+                        output.writeInt(resources.getValue().size());
+
+                        for (final Resource resource : resources.getValue()) {
+                            output.writeInt(stringIndexes.get(resource.getType()));
+                            output.writeInt(stringIndexes.get(resource.getName()));
+                        }
+                    }
+                }
+            }
+
+            if (entry.mDeclarations == null) {
+                output.writeInt(-1);
+            } else {
+                output.writeInt(entry.mDeclarations.size());
+
+                for (final String[] declaration : entry.mDeclarations) {
+                    output.writeInt(stringIndexes.get(declaration[0]));
+                    output.writeInt(stringIndexes.get(declaration[1]));
+                }
+            }
+        }
+    }
+
+    private void read(final DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            throw new IOException("Not a cache file");
+        }
+
+        final boolean sameFingerprint = input.readLong() == mFingerprint;
+
+        final String[] strings = new String[input.readInt()];
+
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = input.readUTF();
+        }
+
+        final int entryCount = input.readInt();
+
+        for (int i = 0; i < entryCount; i++) {
+            final String path = strings[input.readInt()];
+            final Entry entry = new Entry(input.readLong(), input.readLong(), input.readLong(), input.readLong());
+
+            entry.mReferences = readResources(input, strings);
+
+            final Map<Resource, Set<Resource>> specialUsages = readResources(input, strings);
+
+            if (sameFingerprint) {
+                entry.mSpecialUsages = specialUsages;
+            }
+
+            final int declarationCount = input.readInt();
+
+            if (declarationCount >= 0) {
+                final List<String[]> declarations = new ArrayList<String[]>(declarationCount);
+
+                for (int j = 0; j < declarationCount; j++) {
+                    declarations.add(new String[] { strings[input.readInt()], strings[input.readInt()] });
+                }
+
+                entry.mDeclarations = declarations;
+            }
+
+            mEntries.put(path, entry);
+        }
+
+        if (input.read() != -1) {
+            throw new EOFException("Unexpected data at the end of the cache");
+        }
+    }
+
+    private static Map<Resource, Set<Resource>> readResources(final DataInputStream input, final String[] strings) throws IOException {
+        final int ownerCount = input.readInt();
+
+        if (ownerCount < 0) {
+            return null;
+        }
+
+        final Map<Resource, Set<Resource>> resourceMap = new LinkedHashMap<Resource, Set<Resource>>(ownerCount * 2);
+
+        for (int i = 0; i < ownerCount; i++) {
+            final int ownerType = input.readInt();
+            final int ownerName = input.readInt();
+            final Resource owner = ownerType < 0 ? null : new Resource(strings[ownerType], strings[ownerName]);
+
+            final int count = input.readInt();
+            final Set<Resource> resources = new LinkedHashSet<Resource>(count * 2);
+
+            for (int j = 0; j < count; j++) {
+                resources.add(new Resource(strings[input.readInt()], strings[input.readInt()]));
+            }
+
+            resourceMap.put(owner, resources);
+        }
+
+        return resourceMap;
+    }
+
+    private static List<Map<Resource, Set<Resource>>> getResourceMaps(final Entry entry) {
+        final List<Map<Resource, Set<Resource>>> maps = new ArrayList<Map<Resource, Set<Resource>>>(2);
+        maps.add(entry.mReferences);
+        maps.add(entry.mSpecialUsages);
+        return maps;
+    }
+
+    private static void addString(final String string, final Map<String, Integer> stringIndexes, final List<String> strings) {
+        if (!stringIndexes.containsKey(string)) {
+            stringIndexes.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+}
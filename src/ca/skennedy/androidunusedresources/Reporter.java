@@ -0,0 +1,69 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * <p>
+ * Writes the unused resources found by a scan in one of the report formats. The resources are written one at a time, as they're reported, rather than the
+ * whole report being built in memory first. The report is in order, so the scanner still collects and sorts every unused resource before the first is
+ * reported; the report itself holds nothing but the writer's buffer.
+ * </p>
+ * <p>
+ * The writer is flushed when the report ends, but not closed.
+ * </p>
+ */
+public abstract class Reporter {
+    public static final String TEXT = "text";
+    public static final String JSON_LINES = "jsonl";
+    public static final String SARIF = "sarif";
+
+    protected static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    protected final Writer mWriter;
+
+    protected Reporter(final Writer writer) {
+        super();
+        mWriter = writer;
+    }
+
+    /**
+     * @return a reporter for a format, or null if there's no such format
+     */
+    public static Reporter create(final String format, final Writer writer) {
+        if (format.equals(TEXT)) {
+            return new TextReporter(writer);
+        } else if (format.equals(JSON_LINES)) {
+            return new JsonLinesReporter(writer);
+        } else if (format.equals(SARIF)) {
+            return new SarifReporter(writer);
+        }
+
+        return null;
+    }
+
+    public static boolean isFormat(final String format) {
+        return format.equals(TEXT) || format.equals(JSON_LINES) || format.equals(SARIF);
+    }
+
+    /**
+     * @return the extension of a report file in a format
+     */
+    public static String getExtension(final String format) {
+        return format.equals(TEXT) ? "txt" : format;
+    }
+
+    /**
+     * @param unusedResourceCount
+     *            The number of resources that will be reported
+     */
+    public abstract void begin(final File projectDirectory, final int unusedResourceCount) throws IOException;
+
+    /**
+     * Reports an unused resource. The resources are reported sorted by type, then name.
+     */
+    public abstract void report(final Resource resource) throws IOException;
+
+    public abstract void end() throws IOException;
+}
@@ -1,5 +1,6 @@
 package ca.skennedy.androidunusedresources;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.SortedSet;
@@ -9,12 +10,17 @@ public class Resource implements Comparable<Resource> {
     private final String mType;
     private final String mName;
 
-    private final SortedSet<String> mDeclaredPaths = new TreeSet<String>();
-    private final Set<String> mConfigurations = new HashSet<String>();
+    /**
+     * Created when the first declaration is added, since most resources are never asked for their declarations
+     */
+    private SortedSet<String> mDeclaredPaths = null;
+    private Set<String> mConfigurations = null;
 
     private static final String sStringFormat = "%-10s: %s";
     private static final String sPathFormat = "    %s";
 
+    private static final SortedSet<String> sNoDeclaredPaths = Collections.unmodifiableSortedSet(new TreeSet<String>());
+
     public Resource(final String type, final String name) {
         super();
         mType = type;
@@ -30,19 +36,31 @@ public class Resource implements Comparable<Resource> {
     }
 
     public void addDeclaredPath(final String path) {
+        if (mDeclaredPaths == null) {
+            mDeclaredPaths = new TreeSet<String>();
+        }
+
         mDeclaredPaths.add(path);
     }
 
+    public SortedSet<String> getDeclaredPaths() {
+        return mDeclaredPaths == null ? sNoDeclaredPaths : Collections.unmodifiableSortedSet(mDeclaredPaths);
+    }
+
     public boolean hasNoDeclaredPaths() {
-        return mDeclaredPaths.isEmpty();
+        return mDeclaredPaths == null;
     }
 
     public void addConfiguration(final String configuration) {
+        if (mConfigurations == null) {
+            mConfigurations = new HashSet<String>();
+        }
+
         mConfigurations.add(configuration);
     }
 
     public Set<String> getConfigurations() {
-        return mConfigurations;
+        return mConfigurations == null ? Collections.<String> emptySet() : Collections.unmodifiableSet(mConfigurations);
     }
 
     @Override
@@ -69,16 +87,19 @@ public class Resource implements Comparable<Resource> {
 
     @Override
     public int hashCode() {
-        return (mType + '/' + mName).hashCode();
+        // The strings cache their own hashes, so this doesn't allocate
+        return 31 * mType.hashCode() + mName.hashCode();
     }
 
     @Override
     public String toString() {
         final StringBuilder stringBuilder = new StringBuilder(String.format(sStringFormat, mType, mName));
 
-        for (final String path : mDeclaredPaths) {
-            stringBuilder.append('\n');
-            stringBuilder.append(String.format(sPathFormat, path));
+        if (mDeclaredPaths != null) {
+            for (final String path : mDeclaredPaths) {
+                stringBuilder.append('\n');
+                stringBuilder.append(String.format(sPathFormat, path));
+            }
         }
 
         return stringBuilder.toString();
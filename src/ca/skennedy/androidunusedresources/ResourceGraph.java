@@ -0,0 +1,114 @@
+package ca.skennedy.androidunusedresources;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * <p>
+ * The references between resources, by their ids in a {@link ResourceTable}. A reference from a resource's declaration (a layout referencing a drawable, a
+ * style referencing its parent) is an edge from that resource. A reference from anywhere else (code, the manifest, or anything in the res tree that isn't a
+ * resource's declaration) is a root.
+ * </p>
+ * <p>
+ * The used resources are the ones reachable from the roots, so a resource that is only referenced by unused resources is unused too.
+ * </p>
+ * <p>
+ * The roots and edges are kept as plain lists of ids, since a graph is built for every file and merged; the adjacency is only worked out when the reachable
+ * resources are found.
+ * </p>
+ */
+public class ResourceGraph {
+    private int[] mRoots = new int[16];
+    private int mRootCount = 0;
+
+    private int[] mEdgeFrom = new int[16];
+    private int[] mEdgeTo = new int[16];
+    private int mEdgeCount = 0;
+
+    /**
+     * @param from
+     *            The id of the resource whose declaration contains the reference, or -1 if it's a root
+     */
+    public void addReference(final int from, final int to) {
+        if (from < 0) {
+            if (mRootCount == mRoots.length) {
+                mRoots = Arrays.copyOf(mRoots, mRootCount * 2);
+            }
+
+            mRoots[mRootCount++] = to;
+            return;
+        }
+
+        if (mEdgeCount == mEdgeFrom.length) {
+            mEdgeFrom = Arrays.copyOf(mEdgeFrom, mEdgeCount * 2);
+            mEdgeTo = Arrays.copyOf(mEdgeTo, mEdgeCount * 2);
+        }
+
+        mEdgeFrom[mEdgeCount] = from;
+        mEdgeTo[mEdgeCount] = to;
+        mEdgeCount++;
+    }
+
+    public void addAll(final ResourceGraph graph) {
+        for (int i = 0; i < graph.mRootCount; i++) {
+            addReference(-1, graph.mRoots[i]);
+        }
+
+        for (int i = 0; i < graph.mEdgeCount; i++) {
+            addReference(graph.mEdgeFrom[i], graph.mEdgeTo[i]);
+        }
+    }
+
+    /**
+     * Finds every resource that can be reached from the roots.
+     *
+     * @param resourceCount
+     *            The number of ids in the table
+     * @return the ids of the reachable resources
+     */
+    public BitSet findReachable(final int resourceCount) {
+        // The edges from each resource are edgeTargets[edgeStarts[id]] to edgeTargets[edgeStarts[id + 1] - 1]
+        final int[] edgeStarts = new int[resourceCount + 1];
+
+        for (int i = 0; i < mEdgeCount; i++) {
+            edgeStarts[mEdgeFrom[i] + 1]++;
+        }
+
+        for (int id = 0; id < resourceCount; id++) {
+            edgeStarts[id + 1] += edgeStarts[id];
+        }
+
+        final int[] edgeTargets = new int[mEdgeCount];
+        final int[] nextEdge = Arrays.copyOf(edgeStarts, resourceCount);
+
+        for (int i = 0; i < mEdgeCount; i++) {
+            edgeTargets[nextEdge[mEdgeFrom[i]]++] = mEdgeTo[i];
+        }
+
+        final BitSet reachable = new BitSet(resourceCount);
+        final int[] queue = new int[resourceCount];
+        int queueEnd = 0;
+
+        for (int i = 0; i < mRootCount; i++) {
+            if (!reachable.get(mRoots[i])) {
+                reachable.set(mRoots[i]);
+                queue[queueEnd++] = mRoots[i];
+            }
+        }
+
+        for (int queueStart = 0; queueStart < queueEnd; queueStart++) {
+            final int id = queue[queueStart];
+
+            for (int edge = edgeStarts[id]; edge < edgeStarts[id + 1]; edge++) {
+                final int target = edgeTargets[edge];
+
+                if (!reachable.get(target)) {
+                    reachable.set(target);
+                    queue[queueEnd++] = target;
+                }
+            }
+        }
+
+        return reachable;
+    }
+}
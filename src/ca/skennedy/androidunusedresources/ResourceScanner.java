@@ -1,14 +1,33 @@
 package ca.skennedy.androidunusedresources;
 
-import java.io.BufferedReader;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -16,37 +35,214 @@ import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class ResourceScanner {
-    private final File mBaseDirectory;
+    private File mBaseDirectory;
 
     private File mSrcDirectory = null;
     private File mResDirectory = null;
     private File mGenDirectory = null;
 
     private File mManifestFile = null;
-    private File mRJavaFile = null;
+    /**
+     * The R.java or R.txt the resources are read from
+     */
+    private File mSymbolFile = null;
     private String mPackageName = null;
 
-    private final Set<Resource> mResources = new HashSet<Resource>();
-    private final Set<Resource> mUsedResources = new HashSet<Resource>();
+    /**
+     * Every resource in R.java, by id
+     */
+    private final ResourceTable mResourceTable = new ResourceTable();
+
+    /**
+     * The ids of the resources that are used, and of the unused resources that will be reported
+     */
+    private final BitSet mUsedResources = new BitSet();
+    private final BitSet mUnusedResources = new BitSet();
+
+    /**
+     * Edges between each styleable attribute and its attr in both directions, built by a pass over the resource table once the symbols have been read
+     */
+    private ResourceGraph mStyleableAttrs = new ResourceGraph();
+
+    /**
+     * ResourceType->(Matcher over the names of its resources)
+     */
+    private final Map<String, NameMatcher<Resource>> mUsageMatchers = new HashMap<String, NameMatcher<Resource>>();
+
+    /**
+     * The pool used to scan the trees, or null to scan them on the calling thread.
+     */
+    private ForkJoinPool mForkJoinPool = null;
+
+    /**
+     * The declarations in the values directories, built the first time declared paths are needed.
+     */
+    private ValuesIndex mValuesIndex = null;
+
+    /**
+     * Whether to keep what was extracted from each file in {@link ReferenceCache#DIRECTORY_NAME}
+     */
+    private boolean mUseCache = false;
+
+    /**
+     * Whether to stay running after the first scan, and scan again whenever the project changes
+     */
+    private boolean mWatch = false;
+
+    /**
+     * The cache of what was extracted from each file, or null if caching is disabled.
+     */
+    private ReferenceCache mReferenceCache = null;
+
+    /**
+     * Records the cost of each phase of the first scan. Disabled unless a profile was asked for.
+     */
+    private Profiler mProfiler = new Profiler(false);
+
+    /**
+     * Where the profile is written as JSON, or null if it wasn't asked for
+     */
+    private File mProfileFile = null;
+
+    /**
+     * Where the report, and why the project couldn't be scanned, are printed. A batch scan gives each project its own.
+     */
+    private PrintStream mOutput = System.out;
+    private PrintStream mErrors = System.err;
+
+    /**
+     * The format of the report of unused resources, one of {@link Reporter}'s
+     */
+    private String mReportFormat = Reporter.TEXT;
+
+    /**
+     * Where the report is written, or null to print it: to {@link #mReportOutput} if it's set, or with the rest of the output
+     */
+    private File mReportFile = null;
+    private PrintStream mReportOutput = null;
+
+    /**
+     * Finds references of the form <code>R.type.name</code>, where the name is terminated by any non-word character. Since styles and styleables can be
+     * referenced with '.' in place of '_', every prefix of the name that ends at a '.' is also a reference.
+     */
+    static final FileType sJavaFileType = new FileType("java") {
+        @Override
+        public void findReferences(final CharSequence fileContents, final ReferenceListener listener) {
+            final int length = fileContents.length();
+
+            for (int r = CharSequenceUtilities.indexOf(fileContents, 'R'); r >= 0; r = CharSequenceUtilities.indexOf(fileContents, 'R', r + 1)) {
+                // R, any separator, the type, any separator, the name
+                final int typeStart = r + 2;
+                final int typeEnd = skipType(fileContents, typeStart);
+
+                if (typeEnd == typeStart || typeEnd + 1 >= length) {
+                    continue;
+                }
+
+                final String type = fileContents.subSequence(typeStart, typeEnd).toString();
+                final int nameStart = typeEnd + 1;
+
+                for (int position = nameStart; position < length; position++) {
+                    final char c = fileContents.charAt(position);
+
+                    if (c == '.' || !isWordCharacter(c)) {
+                        if (position > nameStart) {
+                            listener.onReference(new Resource(type, getResourceName(fileContents, nameStart, position)), r);
+                        }
+
+                        if (c != '.') {
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    };
+
+    /**
+     * Finds references of the form <code>@type/name</code>, delimited by '"', ' ', '&gt;' or '&lt;'.
+     */
+    static final FileType sXmlFileType = new FileType("xml") {
+        @Override
+        public void findReferences(final CharSequence fileContents, final ReferenceListener listener) {
+            final int length = fileContents.length();
+
+            for (int at = CharSequenceUtilities.indexOf(fileContents, '@', 1); at >= 0; at = CharSequenceUtilities.indexOf(fileContents, '@', at + 1)) {
+                final char before = fileContents.charAt(at - 1);
 
-    private static final Pattern sResourceTypePattern = Pattern.compile("^\\s*public static final class (\\w+)\\s*\\{$");
-    private static final Pattern sResourceNamePattern = Pattern
-            .compile("^\\s*public static( final)? int(\\[\\])? (\\w+)\\s*=\\s*(\\{|(0x)?[0-9A-Fa-f]+;)\\s*$");
+                if (before != '"' && before != ' ' && before != '>') {
+                    continue;
+                }
+
+                final int typeStart = at + 1;
+                final int typeEnd = skipType(fileContents, typeStart);
+
+                if (typeEnd == typeStart || typeEnd >= length || fileContents.charAt(typeEnd) != '/') {
+                    continue;
+                }
+
+                final int nameStart = typeEnd + 1;
+                int nameEnd = nameStart;
+
+                while (nameEnd < length && (isWordCharacter(fileContents.charAt(nameEnd)) || fileContents.charAt(nameEnd) == '.')) {
+                    nameEnd++;
+                }
+
+                if (nameEnd == nameStart || nameEnd >= length) {
+                    continue;
+                }
+
+                final char after = fileContents.charAt(nameEnd);
+
+                if (after == '"' || after == ' ' || after == '<') {
+                    final String type = fileContents.subSequence(typeStart, typeEnd).toString();
+                    listener.onReference(new Resource(type, getResourceName(fileContents, nameStart, nameEnd)), at);
+                }
+            }
+        }
+    };
+
+    private static final String sChangeFormat = "%c %-10s: %s";
+
+    /**
+     * Discards what's printed that isn't part of a report
+     */
+    private static final OutputStream sNullOutputStream = new OutputStream() {
+        @Override
+        public void write(final int b) {
+            // Discarded
+        }
+    };
 
-    private static final FileType sJavaFileType = new FileType("java", "R." + FileType.USAGE_TYPE + "." + FileType.USAGE_NAME + "[^\\w_]");
-    private static final FileType sXmlFileType = new FileType("xml", "[\" >]@" + FileType.USAGE_TYPE + "/" + FileType.USAGE_NAME + "[\" <]");
+    /**
+     * How long to wait for more changes before scanning again
+     */
+    private static final long sWatchSettleTime = 200;
 
     private static final Map<String, ResourceType> sResourceTypes = new HashMap<String, ResourceType>();
 
+    /**
+     * Directory type->(The resource type whose files are named after the resource they declare)
+     */
+    private static final Map<String, ResourceType> sFileNameResourceTypes = new HashMap<String, ResourceType>();
+
+    /**
+     * Directory type->(The resource types that can be declared in the contents of its XML files)
+     */
+    private static final Map<String, List<ResourceType>> sContentResourceTypes = new HashMap<String, List<ResourceType>>();
+
     static {
         // anim
         sResourceTypes.put("anim", new ResourceType("anim") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -60,7 +256,7 @@ public class ResourceScanner {
                 // Check if the resource is declared here
                 final String name = fileName.split("\\.")[0];
 
-                final Pattern pattern = Pattern.compile("^" + resourceName + "$");
+                final Pattern pattern = getPattern("^" + resourceName + "$");
 
                 return pattern.matcher(name).find();
             }
@@ -69,7 +265,7 @@ public class ResourceScanner {
         // array
         sResourceTypes.put("array", new ResourceType("array") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -81,7 +277,7 @@ public class ResourceScanner {
                 }
 
                 // Check if the resource is declared here
-                final Pattern pattern = Pattern.compile("<([a-z]+\\-)?array.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
+                final Pattern pattern = getPattern("<([a-z]+\\-)?array.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
 
                 final Matcher matcher = pattern.matcher(fileContents);
 
@@ -96,7 +292,7 @@ public class ResourceScanner {
         // attr
         sResourceTypes.put("attr", new ResourceType("attr") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -108,7 +304,7 @@ public class ResourceScanner {
                 }
 
                 // Check if the resource is declared here
-                final Pattern pattern = Pattern.compile("<attr.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
+                final Pattern pattern = getPattern("<attr.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
 
                 final Matcher matcher = pattern.matcher(fileContents);
 
@@ -120,34 +316,46 @@ public class ResourceScanner {
             }
 
             @Override
-            public boolean doesFileUseResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
-                if (parent != null) {
-                    // Check if we're in a valid directory
-                    if (!parent.isDirectory()) {
-                        return false;
-                    }
+            public boolean hasSpecialUsages() {
+                return true;
+            }
 
-                    final String directoryType = parent.getName().split("-")[0];
-                    if (!directoryType.equals("layout") && !directoryType.equals("values")) {
-                        return false;
-                    }
+            @Override
+            public boolean canFileHaveSpecialUsages(final File parent) {
+                if (parent == null) {
+                    return true;
                 }
 
-                // Check if the attribute is used here
-                // TODO: This can fail to report attrs as unused even when they're never used. Make it better, but don't allow any false positives.
-                final Pattern pattern = Pattern.compile("<.+?:" + resourceName + "\\s*=\\s*\".*?\".*?/?>");
+                // Check if we're in a valid directory
+                if (!parent.isDirectory()) {
+                    return false;
+                }
 
-                final Matcher matcher = pattern.matcher(fileContents);
+                final String directoryType = parent.getName().split("-")[0];
+                return directoryType.equals("layout") || directoryType.equals("values");
+            }
 
-                if (matcher.find()) {
-                    return true;
+            @Override
+            public boolean isSpecialUsage(final CharSequence fileContents, final int start, final int end) {
+                // Check if the attribute is used here (<Tag prefix:name="value" />)
+                // TODO: This can fail to report attrs as unused even when they're never used. Make it better, but don't allow any false positives.
+                if (start > 0 && fileContents.charAt(start - 1) == ':') {
+                    final int tagStart = CharSequenceUtilities.indexOf(fileContents, '<');
+                    final int closingQuote = findQuotedValueAfter(fileContents, end);
+
+                    if (tagStart >= 0 && tagStart <= start - 3 && closingQuote >= 0 && CharSequenceUtilities.indexOf(fileContents, '>', closingQuote + 1) >= 0) {
+                        return true;
+                    }
                 }
 
-                final Pattern itemPattern = Pattern.compile("<item.+?name\\s*=\\s*\"" + resourceName + "\".*?>");
-                final Matcher itemMatcher = itemPattern.matcher(fileContents);
+                // Check if the attribute is set by a style (<item name="name">)
+                if (end < fileContents.length() && fileContents.charAt(end) == '"') {
+                    final int itemStart = CharSequenceUtilities.indexOf(fileContents, "<item");
+                    final int attributeStart = findAttributeBefore(fileContents, start - 1, "name");
 
-                if (itemMatcher.find()) {
-                    return true;
+                    if (itemStart >= 0 && attributeStart >= 0 && itemStart <= attributeStart - 6 && CharSequenceUtilities.indexOf(fileContents, '>', end + 1) >= 0) {
+                        return true;
+                    }
                 }
 
                 return false;
@@ -157,7 +365,7 @@ public class ResourceScanner {
         // bool
         sResourceTypes.put("bool", new ResourceType("bool") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -169,7 +377,7 @@ public class ResourceScanner {
                 }
 
                 // Check if the resource is declared here
-                final Pattern pattern = Pattern.compile("<bool.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
+                final Pattern pattern = getPattern("<bool.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
 
                 final Matcher matcher = pattern.matcher(fileContents);
 
@@ -184,7 +392,7 @@ public class ResourceScanner {
         // color
         sResourceTypes.put("color", new ResourceType("color") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -196,7 +404,7 @@ public class ResourceScanner {
                 }
 
                 // Check if the resource is declared here
-                final Pattern pattern = Pattern.compile("<color.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
+                final Pattern pattern = getPattern("<color.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
 
                 final Matcher matcher = pattern.matcher(fileContents);
 
@@ -211,7 +419,7 @@ public class ResourceScanner {
         // dimen
         sResourceTypes.put("dimen", new ResourceType("dimen") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -223,7 +431,7 @@ public class ResourceScanner {
                 }
 
                 // Check if the resource is declared here
-                final Pattern pattern = Pattern.compile("<dimen.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
+                final Pattern pattern = getPattern("<dimen.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
 
                 final Matcher matcher = pattern.matcher(fileContents);
 
@@ -238,7 +446,7 @@ public class ResourceScanner {
         // drawable
         sResourceTypes.put("drawable", new ResourceType("drawable") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -251,7 +459,7 @@ public class ResourceScanner {
                     // Check if the resource is declared here
                     final String name = fileName.split("\\.")[0];
 
-                    final Pattern pattern = Pattern.compile("^" + resourceName + "$");
+                    final Pattern pattern = getPattern("^" + resourceName + "$");
 
                     return pattern.matcher(name).find();
                 }
@@ -260,7 +468,7 @@ public class ResourceScanner {
                     // We're in a values- directory
 
                     // Check if the resource is declared here
-                    final Pattern pattern = Pattern.compile("<drawable.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
+                    final Pattern pattern = getPattern("<drawable.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
 
                     final Matcher matcher = pattern.matcher(fileContents);
 
@@ -276,7 +484,7 @@ public class ResourceScanner {
         // id
         sResourceTypes.put("id", new ResourceType("id") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -288,9 +496,9 @@ public class ResourceScanner {
                 }
 
                 // Check if the resource is declared here
-                final Pattern valuesPattern0 = Pattern.compile("<item.*?type\\s*=\\s*\"id\".*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
-                final Pattern valuesPattern1 = Pattern.compile("<item.*?name\\s*=\\s*\"" + resourceName + "\".*?type\\s*=\\s*\"id\".*?/?>");
-                final Pattern layoutPattern = Pattern.compile(":id\\s*=\\s*\"@\\+id/" + resourceName + "\"");
+                final Pattern valuesPattern0 = getPattern("<item.*?type\\s*=\\s*\"id\".*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
+                final Pattern valuesPattern1 = getPattern("<item.*?name\\s*=\\s*\"" + resourceName + "\".*?type\\s*=\\s*\"id\".*?/?>");
+                final Pattern layoutPattern = getPattern(":id\\s*=\\s*\"@\\+id/" + resourceName + "\"");
 
                 Matcher matcher = valuesPattern0.matcher(fileContents);
 
@@ -317,7 +525,7 @@ public class ResourceScanner {
         // integer
         sResourceTypes.put("integer", new ResourceType("integer") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -329,7 +537,7 @@ public class ResourceScanner {
                 }
 
                 // Check if the resource is declared here
-                final Pattern pattern = Pattern.compile("<integer.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
+                final Pattern pattern = getPattern("<integer.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
 
                 final Matcher matcher = pattern.matcher(fileContents);
 
@@ -344,7 +552,7 @@ public class ResourceScanner {
         // layout
         sResourceTypes.put("layout", new ResourceType("layout") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -358,7 +566,7 @@ public class ResourceScanner {
                 // Check if the resource is declared here
                 final String name = fileName.split("\\.")[0];
 
-                final Pattern pattern = Pattern.compile("^" + resourceName + "$");
+                final Pattern pattern = getPattern("^" + resourceName + "$");
 
                 return pattern.matcher(name).find();
             }
@@ -367,7 +575,7 @@ public class ResourceScanner {
         // menu
         sResourceTypes.put("menu", new ResourceType("menu") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -381,7 +589,7 @@ public class ResourceScanner {
                 // Check if the resource is declared here
                 final String name = fileName.split("\\.")[0];
 
-                final Pattern pattern = Pattern.compile("^" + resourceName + "$");
+                final Pattern pattern = getPattern("^" + resourceName + "$");
 
                 return pattern.matcher(name).find();
             }
@@ -390,7 +598,7 @@ public class ResourceScanner {
         // plurals
         sResourceTypes.put("plurals", new ResourceType("plurals") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -402,7 +610,7 @@ public class ResourceScanner {
                 }
 
                 // Check if the resource is declared here
-                final Pattern pattern = Pattern.compile("<plurals.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
+                final Pattern pattern = getPattern("<plurals.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
 
                 final Matcher matcher = pattern.matcher(fileContents);
 
@@ -417,7 +625,7 @@ public class ResourceScanner {
         // raw
         sResourceTypes.put("raw", new ResourceType("raw") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -431,7 +639,7 @@ public class ResourceScanner {
                 // Check if the resource is declared here
                 final String name = fileName.split("\\.")[0];
 
-                final Pattern pattern = Pattern.compile("^" + resourceName + "$");
+                final Pattern pattern = getPattern("^" + resourceName + "$");
 
                 return pattern.matcher(name).find();
             }
@@ -440,7 +648,7 @@ public class ResourceScanner {
         // string
         sResourceTypes.put("string", new ResourceType("string") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -452,7 +660,7 @@ public class ResourceScanner {
                 }
 
                 // Check if the resource is declared here
-                final Pattern pattern = Pattern.compile("<string.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
+                final Pattern pattern = getPattern("<string.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
 
                 final Matcher matcher = pattern.matcher(fileContents);
 
@@ -467,7 +675,7 @@ public class ResourceScanner {
         // style
         sResourceTypes.put("style", new ResourceType("style") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -479,7 +687,7 @@ public class ResourceScanner {
                 }
 
                 // Check if the resource is declared here
-                final Pattern pattern = Pattern.compile("<style.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
+                final Pattern pattern = getPattern("<style.*?name\\s*=\\s*\"" + resourceName + "\".*?/?>");
 
                 final Matcher matcher = pattern.matcher(fileContents);
 
@@ -491,35 +699,61 @@ public class ResourceScanner {
             }
 
             @Override
-            public boolean doesFileUseResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
-                if (parent != null) {
-                    // Check if we're in a valid directory
-                    if (!parent.isDirectory()) {
-                        return false;
-                    }
+            public boolean hasSpecialUsages() {
+                return true;
+            }
 
-                    final String directoryType = parent.getName().split("-")[0];
-                    if (!directoryType.equals("values")) {
-                        return false;
-                    }
+            @Override
+            public boolean canFileHaveSpecialUsages(final File parent) {
+                if (parent == null) {
+                    return true;
+                }
+
+                // Check if we're in a valid directory
+                if (!parent.isDirectory()) {
+                    return false;
+                }
+
+                final String directoryType = parent.getName().split("-")[0];
+                return directoryType.equals("values");
+            }
+
+            @Override
+            public boolean isSpecialUsage(final CharSequence fileContents, final int start, final int end) {
+                if (start == 0 || fileContents.charAt(start - 1) != '"' || end >= fileContents.length()) {
+                    return false;
+                }
+
+                final int styleStart = CharSequenceUtilities.indexOf(fileContents, "<style");
+
+                if (styleStart < 0) {
+                    return false;
                 }
 
                 // Check if the resource is used here as a parent (name="Parent.Child")
-                final Pattern pattern = Pattern.compile("<style.*?name\\s*=\\s*\"" + resourceName + "\\.\\w+\".*?/?>");
+                if (fileContents.charAt(end) == '.') {
+                    int childEnd = end + 1;
 
-                final Matcher matcher = pattern.matcher(fileContents);
+                    while (childEnd < fileContents.length() && FileType.isWordCharacter(fileContents.charAt(childEnd))) {
+                        childEnd++;
+                    }
 
-                if (matcher.find()) {
-                    return true;
+                    if (childEnd > end + 1 && childEnd < fileContents.length() && fileContents.charAt(childEnd) == '"') {
+                        final int attributeStart = findAttributeBefore(fileContents, start - 1, "name");
+
+                        if (attributeStart >= 0 && styleStart <= attributeStart - 6 && CharSequenceUtilities.indexOf(fileContents, '>', childEnd + 1) >= 0) {
+                            return true;
+                        }
+                    }
                 }
 
                 // Check if the resource is used here as a parent (parent="Parent")
-                final Pattern pattern1 = Pattern.compile("<style.*?parent\\s*=\\s*\"" + resourceName + "\".*?/?>");
+                if (fileContents.charAt(end) == '"') {
+                    final int attributeStart = findAttributeBefore(fileContents, start - 1, "parent");
 
-                final Matcher matcher1 = pattern1.matcher(fileContents);
-
-                if (matcher1.find()) {
-                    return true;
+                    if (attributeStart >= 0 && styleStart <= attributeStart - 6 && CharSequenceUtilities.indexOf(fileContents, '>', end + 1) >= 0) {
+                        return true;
+                    }
                 }
 
                 return false;
@@ -529,7 +763,7 @@ public class ResourceScanner {
         // styleable
         sResourceTypes.put("styleable", new ResourceType("styleable") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -545,7 +779,7 @@ public class ResourceScanner {
 
                 if (styleableAttr.length == 1) {
                     // This is the name of the styleable, not one of its attributes
-                    final Pattern pattern = Pattern.compile("<declare-styleable.*?name\\s*=\\s*\"" + styleableAttr[0] + "\".*?/?>");
+                    final Pattern pattern = getPattern("<declare-styleable.*?name\\s*=\\s*\"" + styleableAttr[0] + "\".*?/?>");
                     final Matcher matcher = pattern.matcher(fileContents);
 
                     if (matcher.find()) {
@@ -556,14 +790,14 @@ public class ResourceScanner {
                 }
 
                 // It's one of the attributes, like Styleable_attribute
-                final Pattern blockPattern = Pattern.compile("<declare-styleable.*?name\\s*=\\s*\"" + styleableAttr[0] + "\".*?>(.*?)</declare-styleable\\s*>");
+                final Pattern blockPattern = getPattern("<declare-styleable.*?name\\s*=\\s*\"" + styleableAttr[0] + "\".*?>(.*?)</declare-styleable\\s*>");
                 final Matcher blockMatcher = blockPattern.matcher(fileContents);
 
                 if (blockMatcher.find()) {
                     final String styleableAttributes = blockMatcher.group(1);
 
                     // We now have just the attributes for the styleable
-                    final Pattern attributePattern = Pattern.compile("<attr.*?name\\s*=\\s*\"" + styleableAttr[1] + "\".*?/?>");
+                    final Pattern attributePattern = getPattern("<attr.*?name\\s*=\\s*\"" + styleableAttr[1] + "\".*?/?>");
                     final Matcher attributeMatcher = attributePattern.matcher(styleableAttributes);
 
                     if (attributeMatcher.find()) {
@@ -580,7 +814,7 @@ public class ResourceScanner {
         // xml
         sResourceTypes.put("xml", new ResourceType("xml") {
             @Override
-            public boolean doesFileDeclareResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+            public boolean doesFileDeclareResource(final File parent, final String fileName, final CharSequence fileContents, final String resourceName) {
                 // Check if we're in a valid directory
                 if (!parent.isDirectory()) {
                     return false;
@@ -594,11 +828,30 @@ public class ResourceScanner {
                 // Check if the resource is declared here
                 final String name = fileName.split("\\.")[0];
 
-                final Pattern pattern = Pattern.compile("^" + resourceName + "$");
+                final Pattern pattern = getPattern("^" + resourceName + "$");
 
                 return pattern.matcher(name).find();
             }
         });
+
+        // Route each res directory to the resource types it can declare, so files are only read when their contents matter
+        for (final String type : new String[] { "anim", "drawable", "layout", "menu", "raw", "xml" }) {
+            sFileNameResourceTypes.put(type, sResourceTypes.get(type));
+        }
+
+        final List<ResourceType> valuesResourceTypes = new ArrayList<ResourceType>();
+
+        for (final String type : new String[] { "array", "attr", "bool", "color", "dimen", "drawable", "id", "integer", "plurals", "string", "style",
+                "styleable" }) {
+            valuesResourceTypes.add(sResourceTypes.get(type));
+        }
+
+        sContentResourceTypes.put("values", valuesResourceTypes);
+        sContentResourceTypes.put("layout", Collections.singletonList(sResourceTypes.get("id")));
+    }
+
+    static ResourceType getResourceType(final String type) {
+        return sResourceTypes.get(type);
     }
 
     public ResourceScanner() {
@@ -608,7 +861,7 @@ public class ResourceScanner {
     }
 
     /**
-     * This constructor is only used for debugging.
+     * This constructor is used for debugging and to scan the projects of a batch.
      * 
      * @param baseDirectory
      *            The project directory to use.
@@ -630,211 +883,713 @@ public class ResourceScanner {
         }
     }
 
-    public void run(String[] args) {
-        System.out.println("Running in: " + mBaseDirectory.getAbsolutePath());
-
+    public void run(final String[] args) {
         boolean isAosp = false;
-        if (args.length > 0 && args[0].equals("--aosp")) {
-            if (System.getenv("OUT_DIR") == null) {
-                System.out.println("Please setup your build environment");
-                return;
-            }
-            isAosp = true;
-        }
+        boolean printPatternCacheStats = false;
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        String batchProjects = null;
+        int daemonPort = -1;
+        File reportDirectory = new File(mBaseDirectory, BatchScanner.DEFAULT_REPORT_DIRECTORY_NAME);
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--aosp")) {
+                if (System.getenv("OUT_DIR") == null) {
+                    System.out.println("Please setup your build environment");
+                    return;
+                }
+                isAosp = true;
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                try {
+                    threadCount = Integer.parseInt(args[++i]);
+                } catch (final NumberFormatException e) {
+                    threadCount = 0;
+                }
 
-        findPaths();
+                if (threadCount < 1) {
+                    System.err.println("--threads must be a positive number.");
+                    return;
+                }
+            } else if (args[i].equals("--pattern-cache-size") && i + 1 < args.length) {
+                int patternCacheSize;
 
-        if (isAosp) {
-            mGenDirectory = findGenDirectory();
-        }
+                try {
+                    patternCacheSize = Integer.parseInt(args[++i]);
+                } catch (final NumberFormatException e) {
+                    patternCacheSize = 0;
+                }
+
+                if (patternCacheSize < 1) {
+                    System.err.println("--pattern-cache-size must be a positive number.");
+                    return;
+                }
+
+                ResourceType.getPatternCache().setMaximumSize(patternCacheSize);
+                printPatternCacheStats = true;
+            } else if (args[i].equals("--cache")) {
+                mUseCache = true;
+            } else if (args[i].equals("--watch")) {
+                mWatch = true;
+            } else if (args[i].equals("--profile") && i + 1 < args.length) {
+                mProfileFile = new File(args[++i]);
+                mProfiler = new Profiler(true);
+                printPatternCacheStats = true;
+            } else if (args[i].equals("--batch") && i + 1 < args.length) {
+                batchProjects = args[++i];
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                mReportFormat = args[++i];
+
+                if (!Reporter.isFormat(mReportFormat)) {
+                    System.err.println("--format must be " + Reporter.TEXT + ", " + Reporter.JSON_LINES + " or " + Reporter.SARIF + ".");
+                    return;
+                }
+            } else if (args[i].equals("--output") && i + 1 < args.length) {
+                mReportFile = new File(args[++i]);
+            } else if (args[i].equals("--reports") && i + 1 < args.length) {
+                reportDirectory = new File(args[++i]);
+            } else if (args[i].equals("--daemon") && i + 1 < args.length) {
+                try {
+                    daemonPort = Integer.parseInt(args[++i]);
+                } catch (final NumberFormatException e) {
+                    daemonPort = -1;
+                }
 
-        if (mSrcDirectory == null || mResDirectory == null || mManifestFile == null) {
-            System.err.println("The current directory is not a valid Android project root.");
-            return;
+                if (daemonPort < 0 || daemonPort > 65535) {
+                    System.err.println("--daemon must be a port number, or 0 for any free port.");
+                    return;
+                }
+            } else {
+                System.err.println("Usage: [--aosp] [--threads N] [--pattern-cache-size N] [--cache] [--watch] [--profile FILE] [--batch LIST|GLOB] "
+                        + "[--reports DIR] [--daemon PORT] [--format text|jsonl|sarif] [--output FILE]");
+                return;
+            }
         }
 
-        mPackageName = findPackageName(mManifestFile);
-
-        if (mPackageName == null || mPackageName.trim().length() == 0) {
-            System.err.println("Unable to determine your application's package name from AndroidManifest.xml.  Please ensure it is set.");
+        if ((batchProjects != null || daemonPort >= 0) && (mWatch || mProfileFile != null)) {
+            System.err.println("--batch and --daemon can't be used with --watch or --profile.");
             return;
         }
 
-        if (mGenDirectory == null) {
-            System.err.println("You must first build your project to generate R.java");
+        if (batchProjects != null && daemonPort >= 0) {
+            System.err.println("--batch can't be used with --daemon.");
             return;
         }
 
-        mRJavaFile = findRJavaFile(mGenDirectory, mPackageName);
-
-        if (mRJavaFile == null) {
-            System.err.println("You must first build your project to generate R.java");
+        if (mReportFile != null && (batchProjects != null || daemonPort >= 0)) {
+            System.err.println("--output can't be used with --batch or --daemon. A batch writes its reports to --reports.");
             return;
         }
 
-        mResources.clear();
-
-        try {
-            mResources.addAll(getResourceList(mRJavaFile));
-        } catch (final IOException e) {
-            System.err.println("The R.java found could not be opened.");
-            e.printStackTrace();
+        if (!mReportFormat.equals(Reporter.TEXT) && mReportFile == null && batchProjects == null) {
+            // Keep standard out for the report
+            mReportOutput = System.out;
+            mOutput = System.err;
         }
 
-        System.out.println(mResources.size() + " resources found");
-        System.out.println();
-
-        mUsedResources.clear();
-
-        searchFiles(null, mSrcDirectory, sJavaFileType);
-        searchFiles(null, mResDirectory, sXmlFileType);
-        searchFiles(null, mManifestFile, sXmlFileType);
-
-        /*
-         * Because attr and styleable are so closely linked, we need to do some matching now to ensure we don't say an attr is unused if its corresponding
-         * styleable is used.
-         */
-        final Set<Resource> extraUsedResources = new HashSet<Resource>();
-
-        for (final Resource resource : mResources) {
-            if (resource.getType().equals("styleable")) {
-                final String[] styleableAttr = resource.getName().split("_");
-
-                if (styleableAttr.length > 1) {
-                    final String attrName = styleableAttr[1];
+        mOutput.println("Running in: " + mBaseDirectory.getAbsolutePath());
 
-                    final Resource attrResourceTest = new Resource("attr", attrName);
-
-                    if (mUsedResources.contains(attrResourceTest)) {
-                        // It's used
-                        extraUsedResources.add(resource);
-                    }
-                }
-            } else if (resource.getType().equals("attr")) {
-                // Check if we use this attr as a styleable
-                for (final Resource usedResource : mUsedResources) {
-                    if (usedResource.getType().equals("styleable")) {
-                        final String[] styleableAttr = usedResource.getName().split("_");
+        // A single thread walks the trees directly rather than through the pool
+        mForkJoinPool = threadCount > 1 ? new ForkJoinPool(threadCount) : null;
+        mProfiler.setProperty("threads", threadCount);
 
-                        if (styleableAttr.length > 1 && styleableAttr[1].equals(resource.getName())) {
-                            // It's used
-                            extraUsedResources.add(resource);
-                        }
-                    }
-                }
+        try {
+            if (batchProjects != null) {
+                BatchScanner.run(mBaseDirectory, batchProjects, reportDirectory, mReportFormat, isAosp, mUseCache, mForkJoinPool);
+            } else if (daemonPort >= 0) {
+                runDaemon(daemonPort, isAosp);
+            } else {
+                run(isAosp);
             }
-        }
 
-        // Move the new found used resources to the used set
-        for (final Resource resource : extraUsedResources) {
-            mResources.remove(resource);
-            mUsedResources.add(resource);
+            if (printPatternCacheStats) {
+                mOutput.println();
+                mOutput.println("Pattern cache: " + ResourceType.getPatternCache());
+            }
+        } finally {
+            if (mForkJoinPool != null) {
+                mForkJoinPool.shutdown();
+                mForkJoinPool = null;
+            }
         }
+    }
 
-        /*
-         * Find the paths where the unused resources are declared.
-         */
-        final SortedMap<String, SortedMap<String, Resource>> unusedResources = new TreeMap<String, SortedMap<String, Resource>>();
-
-        for (final Resource resource : mResources) {
-            final String type = resource.getType();
-            SortedMap<String, Resource> typeMap = unusedResources.get(type);
-
-            if (typeMap == null) {
-                typeMap = new TreeMap<String, Resource>();
-                unusedResources.put(type, typeMap);
-            }
+    /**
+     * Scans the project as one of a batch. The scanner shares the batch's pool, and prints its report to its own stream. A text report has the rest of the
+     * output and any errors with it; the other formats only have the report, and the errors go to standard error.
+     *
+     * @param forkJoinPool
+     *            The batch's pool, or null to scan on the calling thread
+     * @return the number of unused resources, or -1 if the project couldn't be scanned
+     */
+    int runBatch(final String reportFormat, final boolean isAosp, final boolean useCache, final ForkJoinPool forkJoinPool, final PrintStream output) {
+        mReportFormat = reportFormat;
+        mUseCache = useCache;
+        mForkJoinPool = forkJoinPool;
+
+        if (reportFormat.equals(Reporter.TEXT)) {
+            mOutput = output;
+            mErrors = output;
+        } else {
+            mOutput = new PrintStream(sNullOutputStream);
+            mReportOutput = output;
 
-            typeMap.put(resource.getName(), resource);
+            // Every project's errors go to standard error, so say which project they're from
+            mErrors = new PrefixedPrintStream(System.err, mBaseDirectory.getPath() + ": ");
         }
 
-        // Ensure we only try to find resource types that exist in the map we just built
-        final Map<String, ResourceType> unusedResourceTypes = new HashMap<String, ResourceType>(unusedResources.size());
+        mOutput.println("Running in: " + mBaseDirectory.getAbsolutePath());
 
-        for (final String type : unusedResources.keySet()) {
-            final ResourceType resourceType = sResourceTypes.get(type);
-            if (resourceType != null) {
-                unusedResourceTypes.put(type, resourceType);
-            }
+        if (!findProject(isAosp)) {
+            return -1;
         }
 
-        findDeclaredPaths(null, mResDirectory, unusedResourceTypes, unusedResources);
+        if (!scan(true, false)) {
+            return -1;
+        }
 
-        /*
-         * Find the paths where the used resources are declared.
-         */
-        final SortedMap<String, SortedMap<String, Resource>> usedResources = new TreeMap<String, SortedMap<String, Resource>>();
+        printUnusedResources();
 
-        for (final Resource resource : mUsedResources) {
-            final String type = resource.getType();
-            SortedMap<String, Resource> typeMap = usedResources.get(type);
+        return mUnusedResources.cardinality();
+    }
 
-            if (typeMap == null) {
-                typeMap = new TreeMap<String, Resource>();
-                usedResources.put(type, typeMap);
-            }
+    /**
+     * Scans the project for the daemon. Like watching, what was extracted from each file is kept in memory, so scanning again only extracts from the files
+     * that changed.
+     *
+     * @param errors
+     *            Where to print why the project couldn't be scanned
+     * @return true if the project was scanned, false if it couldn't be found or its resources couldn't be read
+     */
+    boolean rescan(final boolean isAosp, final boolean useCache, final ForkJoinPool forkJoinPool, final PrintStream errors) {
+        mUseCache = useCache;
+        mForkJoinPool = forkJoinPool;
+        mErrors = errors;
 
-            typeMap.put(resource.getName(), resource);
+        if (!findProject(isAosp)) {
+            return false;
         }
 
-        // Ensure we only try to find resource types that exist in the map we just built
-        final Map<String, ResourceType> usedResourceTypes = new HashMap<String, ResourceType>(usedResources.size());
-
-        for (final String type : usedResources.keySet()) {
-            final ResourceType resourceType = sResourceTypes.get(type);
-            if (resourceType != null) {
-                usedResourceTypes.put(type, resourceType);
-            }
+        if (mReferenceCache == null && !mUseCache) {
+            // The fingerprint is set when the scan has built the usage matchers
+            mReferenceCache = ReferenceCache.create(0);
         }
 
-        findDeclaredPaths(null, mResDirectory, usedResourceTypes, usedResources);
-
-        // Deal with resources from library projects
-        final Set<Resource> libraryProjectResources = getLibraryProjectResources();
-
-        /*
-         * Since an app can override a library project resource, we cannot simply remove all resources that are defined in library projects. Instead, we must
-         * only remove them if we cannot find a declaration of them in the current project.
-         */
-        for (final Resource libraryResource : libraryProjectResources) {
-            final SortedMap<String, Resource> typedResources = unusedResources.get(libraryResource.getType());
+        return scan(false, false);
+    }
 
-            if (typedResources != null) {
-                final Resource appResource = typedResources.get(libraryResource.getName());
+    /**
+     * Scans a project without printing anything, for build tools that scan in their own process. A scanner can scan many projects in turn, and scanning the
+     * same project again only extracts from the files that changed since its last scan, like watching.
+     *
+     * @throws IOException
+     *             if the project couldn't be scanned, with why as its message
+     */
+    public ScanResult scan(final ScanOptions options) throws IOException {
+        final long startTime = System.nanoTime();
+        final File projectDirectory = options.getProjectDirectory().getAbsoluteFile();
 
-                if (appResource != null && appResource.hasNoDeclaredPaths()) {
-                    typedResources.remove(libraryResource.getName());
-                    mResources.remove(appResource);
-                }
-            }
+        if (!projectDirectory.equals(mBaseDirectory.getAbsoluteFile())) {
+            setProject(projectDirectory);
         }
 
-        final UsageMatrix usageMatrix = new UsageMatrix(mBaseDirectory, usedResources);
-        usageMatrix.generateMatrices();
+        final ByteArrayOutputStream errors = new ByteArrayOutputStream();
 
-        final int unusedResourceCount = mResources.size();
+        mUseCache = options.isUseCache();
+        mForkJoinPool = options.getForkJoinPool();
+        mErrors = new PrintStream(errors, true);
+        mProfiler = new Profiler(options.isProfiled());
+
+        try {
+            mProfiler.begin("findPaths");
 
-        if (unusedResourceCount > 0) {
-            System.out.println(unusedResourceCount + " unused resources were found:");
+            if (!findProject(options.isAosp())) {
+                throw new IOException(errors.toString().trim());
+            }
 
-            final SortedSet<Resource> sortedResources = new TreeSet<Resource>(mResources);
+            if (mReferenceCache == null && !mUseCache) {
+                // The fingerprint is set when the scan has built the usage matchers
+                mReferenceCache = ReferenceCache.create(0);
+            }
 
-            for (final Resource resource : sortedResources) {
-                System.out.println(resource);
+            if (!scan(false, true)) {
+                throw new IOException(errors.toString().trim());
             }
 
-            System.out.println();
-            System.out.println("If any of the above resources are used, please submit your project as a test case so this application can be improved.");
-            System.out.println();
-            System.out.println("This application does not maintain a dependency graph, so you should run it again after removing the above resources.");
-        } else {
-            System.out.println("No unused resources were detected.");
-            System.out.println("If you know you have some unused resources, please submit your project as a test case so this application can be improved.");
+            return new ScanResult(mBaseDirectory, mPackageName, mResourceTable.size(), mResourceTable.get(mUnusedResources),
+                    mResourceTable.get(mUsedResources), (System.nanoTime() - startTime) / 1000000, mProfiler.getPhaseTimes());
+        } finally {
+            // The pool belongs to the caller
+            mForkJoinPool = null;
+            mErrors = System.err;
+            mProfiler = new Profiler(false);
         }
     }
 
-    private void findPaths() {
-        final File[] children = mBaseDirectory.listFiles();
+    /**
+     * Switches to another project, forgetting everything about the last one.
+     */
+    private void setProject(final File baseDirectory) {
+        mBaseDirectory = baseDirectory;
+        mSrcDirectory = null;
+        mResDirectory = null;
+        mGenDirectory = null;
+        mManifestFile = null;
+        mSymbolFile = null;
+        mPackageName = null;
+        mReferenceCache = null;
+        mValuesIndex = null;
+    }
+
+    ResourceTable getResourceTable() {
+        return mResourceTable;
+    }
+
+    /**
+     * @return the ids of the unused resources found by the last scan
+     */
+    BitSet getUnusedResources() {
+        return mUnusedResources;
+    }
+
+    private void runDaemon(final int port, final boolean isAosp) {
+        try {
+            new Daemon(mBaseDirectory, isAosp, mUseCache, mForkJoinPool).run(port);
+        } catch (final IOException e) {
+            System.err.println("Unable to listen on port " + port + ".");
+            e.printStackTrace();
+        }
+    }
+
+    private void run(final boolean isAosp) {
+        mProfiler.begin("findPaths");
+
+        if (!findProject(isAosp)) {
+            return;
+        }
+
+        if (!scan(true, false)) {
+            return;
+        }
+
+        printUnusedResources();
+
+        if (mProfileFile != null) {
+            writeProfile();
+        }
+
+        if (mWatch) {
+            watch(isAosp);
+        }
+    }
+
+    /**
+     * Finds the project's directories, package name and symbols, printing an error if any of them can't be found.
+     *
+     * @return true if the project was found, false otherwise
+     */
+    boolean findProject(final boolean isAosp) {
+        findPaths();
+
+        if (isAosp) {
+            mGenDirectory = findGenDirectory();
+        }
+
+        if (mSrcDirectory == null || mResDirectory == null || mManifestFile == null) {
+            mErrors.println(mBaseDirectory.getAbsolutePath() + " is not a valid Android project root.");
+            return false;
+        }
+
+        mPackageName = findPackageName(mManifestFile);
+
+        if (mPackageName == null || mPackageName.trim().length() == 0) {
+            mErrors.println("Unable to determine your application's package name from AndroidManifest.xml.  Please ensure it is set.");
+            return false;
+        }
+
+        mSymbolFile = SymbolReader.find(mBaseDirectory, mGenDirectory, mPackageName);
+
+        if (mSymbolFile == null) {
+            mErrors.println("You must first build your project to generate R.java");
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Scans the project, leaving the ids of the unused resources in {@link #mUnusedResources} and the used resources in {@link #mUsedResources}.
+     *
+     * @param report
+     *            true to print the number of resources and generate the usage matrices
+     * @param declareAll
+     *            true to find where every used and unused resource is declared, rather than only what the report needs
+     * @return true if the project was scanned, false if its resources couldn't be read
+     */
+    private boolean scan(final boolean report, final boolean declareAll) {
+        mProfiler.begin("rJava");
+
+        if (!loadResources()) {
+            mProfiler.end();
+            return false;
+        }
+
+        mProfiler.end();
+
+        if (report) {
+            mOutput.println(mResourceTable.size() + " resources found");
+            mOutput.println();
+        }
+
+        if (mUseCache || mWatch) {
+            final long fingerprint = getUsageMatcherFingerprint();
+
+            if (mReferenceCache != null) {
+                mReferenceCache.setFingerprint(fingerprint);
+            } else if (mUseCache) {
+                mReferenceCache = ReferenceCache.load(new File(mBaseDirectory, ReferenceCache.DIRECTORY_NAME), fingerprint, mErrors);
+            } else {
+                // Watching keeps what was extracted in memory, so only changed files are extracted again
+                mReferenceCache = ReferenceCache.create(fingerprint);
+            }
+        }
+
+        final ResourceGraph graph = new ResourceGraph();
+
+        mProfiler.begin("javaScan");
+        searchFiles(null, mSrcDirectory, sJavaFileType, graph);
+        mProfiler.begin("xmlScan");
+        searchFiles(null, mResDirectory, sXmlFileType, graph);
+        mProfiler.begin("manifestScan");
+        searchFiles(null, mManifestFile, sXmlFileType, graph);
+
+        mProfiler.begin("attrStyleable");
+
+        /*
+         * Because attr and styleable are so closely linked, an attr is used if its corresponding styleable is used, and vice versa.
+         */
+        graph.addAll(mStyleableAttrs);
+
+        // Everything that can be reached from code or the manifest is used, and everything else is unused
+        mUsedResources.or(graph.findReachable(mResourceTable.size()));
+        mUnusedResources.set(0, mResourceTable.size());
+        mUnusedResources.andNot(mUsedResources);
+
+        mProfiler.end();
+
+        final boolean matricesEnabled = report && UsageMatrix.isEnabled(mBaseDirectory);
+
+        // The used resources are only needed for the usage matrices
+        final UsageMatrix usageMatrix = report ? new UsageMatrix(mBaseDirectory,
+                groupByType(matricesEnabled ? mResourceTable.get(mUsedResources) : Collections.<Resource> emptyList())) : null;
+
+        // Deal with resources from library projects
+        mProfiler.begin("libraryProjects");
+        final BitSet libraryProjectResources = getLibraryProjectResources();
+        mProfiler.end();
+
+        /*
+         * Only find the paths where resources are declared if something needs them: the unused resources that will be printed or that may come from a
+         * library project, and the used resources if the usage matrices will be generated or every declaration was asked for. They're all found in a single
+         * walk of the res tree.
+         */
+        final BitSet declaredResources = (BitSet) mUnusedResources.clone();
+
+        if (!report && !declareAll) {
+            declaredResources.and(libraryProjectResources);
+        }
+
+        if (matricesEnabled || declareAll) {
+            declaredResources.or(mUsedResources);
+        }
+
+        if (!declaredResources.isEmpty()) {
+            mProfiler.begin("declarations");
+            findDeclaredPaths(mResourceTable.get(declaredResources));
+            mProfiler.end();
+        }
+
+        mProfiler.begin("libraryProjects");
+
+        /*
+         * Since an app can override a library project resource, we cannot simply remove all resources that are defined in library projects. Instead, we must
+         * only remove them if we cannot find a declaration of them in the current project.
+         */
+        for (int id = libraryProjectResources.nextSetBit(0); id >= 0; id = libraryProjectResources.nextSetBit(id + 1)) {
+            if (mUnusedResources.get(id) && mResourceTable.get(id).hasNoDeclaredPaths()) {
+                mUnusedResources.clear(id);
+            }
+        }
+
+        mProfiler.end();
+
+        if (usageMatrix != null) {
+            mProfiler.begin("matrices");
+            usageMatrix.generateMatrices(mOutput, mErrors, mForkJoinPool);
+            mProfiler.end();
+        }
+
+        if (mReferenceCache != null && mReferenceCache.isPersistent()) {
+            try {
+                mReferenceCache.save();
+            } catch (final IOException e) {
+                mErrors.println("The cache could not be saved.");
+                e.printStackTrace(mErrors);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads every resource from R.java into {@link #mResourceTable}, and builds the matchers used to find their special uses. The project must have been
+     * found first.
+     *
+     * @return true if the resources were read, false if they couldn't be, after printing why
+     */
+    boolean loadResources() {
+        mResourceTable.clear();
+        mUsedResources.clear();
+        mUnusedResources.clear();
+        mStyleableAttrs = new ResourceGraph();
+        mValuesIndex = null;
+
+        // The patterns are built from the last project's names, which a batch or daemon won't scan again soon
+        ResourceType.getPatternCache().clear();
+
+        try {
+            readResources(mSymbolFile, mPackageName, mResourceTable, mStyleableAttrs);
+
+            if (mResourceTable.size() == 0) {
+                // Symbols for the wrong package, or an unfinished build, would otherwise report that nothing is unused
+                throw new IOException(mSymbolFile.getAbsolutePath() + " has no resources for " + mPackageName);
+            }
+        } catch (final IOException e) {
+            mErrors.println("The " + mSymbolFile.getName() + " found could not be read: " + e.getMessage());
+            return false;
+        }
+
+        buildUsageMatchers();
+        return true;
+    }
+
+    /**
+     * ResourceType->(ResourceName->Resource)
+     */
+    private static SortedMap<String, SortedMap<String, Resource>> groupByType(final Collection<Resource> resources) {
+        final SortedMap<String, SortedMap<String, Resource>> resourceMap = new TreeMap<String, SortedMap<String, Resource>>();
+
+        for (final Resource resource : resources) {
+            final String type = resource.getType();
+            SortedMap<String, Resource> typeMap = resourceMap.get(type);
+
+            if (typeMap == null) {
+                typeMap = new TreeMap<String, Resource>();
+                resourceMap.put(type, typeMap);
+            }
+
+            typeMap.put(resource.getName(), resource);
+        }
+
+        return resourceMap;
+    }
+
+    /**
+     * Writes the profile of the first scan. Later scans while watching aren't profiled.
+     */
+    private void writeProfile() {
+        mProfiler.setProperty("project", mBaseDirectory.getAbsolutePath());
+        mProfiler.setProperty("resources", mResourceTable.size());
+        mProfiler.setProperty("unusedResources", mUnusedResources.cardinality());
+
+        try {
+            mProfiler.write(mProfileFile);
+        } catch (final IOException e) {
+            mErrors.println("The profile could not be written to " + mProfileFile.getAbsolutePath());
+            e.printStackTrace(mErrors);
+        }
+
+        mProfiler = new Profiler(false);
+    }
+
+    private void printUnusedResources() {
+        final List<Resource> unusedResources = mResourceTable.get(mUnusedResources);
+        Collections.sort(unusedResources);
+
+        final PrintStream reportOutput = mReportOutput != null ? mReportOutput : mOutput;
+        Writer writer = null;
+
+        try {
+            if (mReportFile != null) {
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mReportFile), "UTF-8"), 64 * 1024);
+            } else if (mReportFormat.equals(Reporter.TEXT)) {
+                // Text is printed with the rest of the output, in the same encoding
+                writer = new BufferedWriter(new OutputStreamWriter(reportOutput), 64 * 1024);
+            } else {
+                writer = new BufferedWriter(new OutputStreamWriter(reportOutput, "UTF-8"), 64 * 1024);
+            }
+
+            final Reporter reporter = Reporter.create(mReportFormat, writer);
+            reporter.begin(mBaseDirectory, unusedResources.size());
+
+            for (final Resource resource : unusedResources) {
+                reporter.report(resource);
+            }
+
+            reporter.end();
+        } catch (final IOException e) {
+            mErrors.println("The report could not be written.");
+            e.printStackTrace(mErrors);
+        } finally {
+            // Only close the report's own file; the streams that are printed to stay open
+            if (mReportFile != null && writer != null) {
+                try {
+                    writer.close();
+                } catch (final IOException e) {
+                    e.printStackTrace(mErrors);
+                }
+            }
+        }
+    }
+
+    /**
+     * Watches the project for changes until the process is stopped. After each change the project is scanned again, and the resources that became unused or
+     * used are printed. Files that haven't changed are answered from the cache rather than being read again.
+     */
+    private void watch(final boolean isAosp) {
+        final WatchService watchService;
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (final IOException e) {
+            mErrors.println("Unable to watch for changes.");
+            e.printStackTrace(mErrors);
+            return;
+        }
+
+        final Map<WatchKey, Path> watchedDirectories = new HashMap<WatchKey, Path>();
+
+        try {
+            registerTree(watchService, mSrcDirectory, watchedDirectories);
+            registerTree(watchService, mResDirectory, watchedDirectories);
+            registerTree(watchService, mGenDirectory, watchedDirectories);
+
+            // For AndroidManifest.xml and project.properties
+            final Path basePath = mBaseDirectory.toPath();
+            watchedDirectories.put(basePath.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), basePath);
+
+            // The symbols can be outside gen, such as R.txt in bin or R.jar in build
+            final Path symbolPath = mSymbolFile.getParentFile().toPath();
+
+            if ((mGenDirectory == null || !symbolPath.startsWith(mGenDirectory.toPath())) && !symbolPath.equals(basePath)) {
+                watchedDirectories.put(symbolPath.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), symbolPath);
+            }
+        } catch (final IOException e) {
+            mErrors.println("Unable to watch for changes.");
+            e.printStackTrace(mErrors);
+            return;
+        }
+
+        SortedSet<Resource> unusedResources = new TreeSet<Resource>(mResourceTable.get(mUnusedResources));
+
+        mOutput.println();
+        mOutput.println("Watching for changes. Press Ctrl+C to stop.");
+
+        try {
+            while (true) {
+                boolean changed = false;
+
+                // Wait for a change, then let the rest of a burst of changes (like a save or a build) arrive before scanning
+                for (WatchKey key = watchService.take(); key != null; key = watchService.poll(sWatchSettleTime, TimeUnit.MILLISECONDS)) {
+                    final Path directory = watchedDirectories.get(key);
+
+                    for (final WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            changed = true;
+                            continue;
+                        }
+
+                        final Path path = directory.resolve((Path) event.context());
+
+                        if (directory.equals(mBaseDirectory.toPath())) {
+                            // Only the manifest, project properties and symbols matter in the base directory
+                            final String fileName = path.getFileName().toString();
+
+                            if (!fileName.equals("AndroidManifest.xml") && !fileName.equals("project.properties") && !fileName.equals(SymbolReader.SYMBOL_FILE_NAME)) {
+                                continue;
+                            }
+                        } else if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                            try {
+                                registerTree(watchService, path.toFile(), watchedDirectories);
+                            } catch (final IOException e) {
+                                mErrors.println("Unable to watch " + path);
+                            }
+                        }
+
+                        changed = true;
+                    }
+
+                    if (!key.reset()) {
+                        watchedDirectories.remove(key);
+                    }
+                }
+
+                if (!changed || !findProject(isAosp)) {
+                    continue;
+                }
+
+                final long startTime = System.currentTimeMillis();
+
+                if (!scan(false, false)) {
+                    continue;
+                }
+
+                final SortedSet<Resource> newUnusedResources = new TreeSet<Resource>(mResourceTable.get(mUnusedResources));
+
+                mOutput.println();
+                mOutput.println("Scanned in " + (System.currentTimeMillis() - startTime) + "ms, " + newUnusedResources.size() + " unused resources");
+
+                for (final Resource resource : newUnusedResources) {
+                    if (!unusedResources.contains(resource)) {
+                        mOutput.println(String.format(sChangeFormat, '+', resource.getType(), resource.getName()));
+                    }
+                }
+
+                for (final Resource resource : unusedResources) {
+                    if (!newUnusedResources.contains(resource)) {
+                        mOutput.println(String.format(sChangeFormat, '-', resource.getType(), resource.getName()));
+                    }
+                }
+
+                unusedResources = newUnusedResources;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                watchService.close();
+            } catch (final IOException e) {
+                e.printStackTrace(mErrors);
+            }
+        }
+    }
+
+    private static void registerTree(final WatchService watchService, final File directory, final Map<WatchKey, Path> watchedDirectories)
+            throws IOException {
+        if (directory == null || !directory.isDirectory()) {
+            return;
+        }
+
+        final Path path = directory.toPath();
+        watchedDirectories.put(path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), path);
+
+        for (final File child : directory.listFiles()) {
+            if (child.isDirectory()) {
+                registerTree(watchService, child, watchedDirectories);
+            }
+        }
+    }
+
+    private void findPaths() {
+        final File[] children = mBaseDirectory.listFiles();
 
         if (children == null) {
             return;
@@ -855,13 +1610,13 @@ public class ResourceScanner {
         }
     }
 
-    private static String findPackageName(final File androidManifestFile) {
-        String manifest = "";
+    private String findPackageName(final File androidManifestFile) {
+        CharSequence manifest = "";
 
         try {
             manifest = FileUtilities.getFileContents(androidManifestFile);
         } catch (final IOException e) {
-            e.printStackTrace();
+            e.printStackTrace(mErrors);
         }
 
         final Pattern pattern = Pattern.compile("<manifest\\s+.*?package\\s*=\\s*\"([A-Za-z0-9_\\.]+)\".*?>");
@@ -874,21 +1629,13 @@ public class ResourceScanner {
         return null;
     }
 
-    private static File findRJavaFile(final File baseDirectory, final String packageName) {
-        final File rJava = new File(baseDirectory, packageName.replace('.', '/') + "/R.java");
-
-        if (rJava.exists()) {
-            return rJava;
-        }
-
-        return null;
-    }
-
     /**
-     * Removes all resources declared in library projects.
+     * Finds the resources declared in library projects.
+     *
+     * @return the ids of the resources in R.java that are also in a library project's R.java
      */
-    private Set<Resource> getLibraryProjectResources() {
-        final Set<Resource> resources = new HashSet<Resource>();
+    private BitSet getLibraryProjectResources() {
+        final BitSet resources = new BitSet();
 
         // Find the library projects
         final File projectPropertiesFile = new File(mBaseDirectory, "project.properties");
@@ -901,7 +1648,7 @@ public class ResourceScanner {
         try {
             fileLines = FileUtilities.getFileLines(projectPropertiesFile);
         } catch (final IOException e) {
-            e.printStackTrace();
+            e.printStackTrace(mErrors);
         }
 
         final Pattern libraryProjectPattern = Pattern.compile("^android\\.library\\.reference\\.\\d+=(.*)$", Pattern.CASE_INSENSITIVE);
@@ -916,21 +1663,47 @@ public class ResourceScanner {
             }
         }
 
-        // We have the paths to the library projects, now we need their R.java files
+        final List<File> libraryProjectDirectories = new ArrayList<File>();
+
         for (final String libraryProjectPath : libraryProjectPaths) {
             final File libraryProjectDirectory = new File(mBaseDirectory, libraryProjectPath);
 
             if (libraryProjectDirectory.exists() && libraryProjectDirectory.isDirectory()) {
-                final String libraryProjectPackageName = findPackageName(new File(libraryProjectDirectory, "AndroidManifest.xml"));
-                final File libraryProjectRJavaFile = findRJavaFile(new File(libraryProjectDirectory, "gen"), libraryProjectPackageName);
-
-                // If a project has no resources, it will have no R.java
-                if (libraryProjectRJavaFile != null) {
-                    try {
-                        resources.addAll(getResourceList(libraryProjectRJavaFile));
-                    } catch (final IOException e) {
-                        e.printStackTrace();
-                    }
+                libraryProjectDirectories.add(libraryProjectDirectory);
+            }
+        }
+
+        // We have the library projects, now we need their symbols
+        final List<ResourceTable> libraryProjectResources = new ArrayList<ResourceTable>();
+
+        if (mForkJoinPool != null) {
+            final List<LibraryTask> tasks = new ArrayList<LibraryTask>();
+
+            for (final File libraryProjectDirectory : libraryProjectDirectories) {
+                final LibraryTask task = new LibraryTask(libraryProjectDirectory);
+                mForkJoinPool.execute(task);
+                tasks.add(task);
+            }
+
+            for (final LibraryTask task : tasks) {
+                libraryProjectResources.add(task.join());
+            }
+        } else {
+            for (final File libraryProjectDirectory : libraryProjectDirectories) {
+                libraryProjectResources.add(getLibraryProjectResources(libraryProjectDirectory));
+            }
+        }
+
+        for (final ResourceTable libraryResources : libraryProjectResources) {
+            if (libraryResources == null) {
+                continue;
+            }
+
+            for (int libraryId = 0; libraryId < libraryResources.size(); libraryId++) {
+                final int id = mResourceTable.getId(libraryResources.getType(libraryId), libraryResources.getName(libraryId));
+
+                if (id >= 0) {
+                    resources.set(id);
                 }
             }
         }
@@ -938,80 +1711,383 @@ public class ResourceScanner {
         return resources;
     }
 
-    private static Set<Resource> getResourceList(final File rJavaFile) throws IOException {
-        final InputStream inputStream = new FileInputStream(rJavaFile);
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+    /**
+     * @return the resources of a library project, or null if it has none or they couldn't be read
+     */
+    private ResourceTable getLibraryProjectResources(final File libraryProjectDirectory) {
+        final String libraryProjectPackageName = findPackageName(new File(libraryProjectDirectory, "AndroidManifest.xml"));
+        final File libraryProjectSymbolFile = SymbolReader.find(libraryProjectDirectory, new File(libraryProjectDirectory, "gen"), libraryProjectPackageName);
+
+        // If a project has no resources, it will have no R.java
+        if (libraryProjectSymbolFile == null) {
+            return null;
+        }
+
+        try {
+            return SymbolCache.getResources(libraryProjectDirectory, libraryProjectSymbolFile, libraryProjectPackageName, mUseCache, mErrors);
+        } catch (final IOException e) {
+            e.printStackTrace(mErrors);
+            return null;
+        }
+    }
+
+    static ResourceTable getResourceList(final File symbolFile, final String packageName) throws IOException {
+        final ResourceTable resources = new ResourceTable();
+        readResources(symbolFile, packageName, resources, null);
+        return resources;
+    }
+
+    /**
+     * Adds every resource in an R.java, R.txt or compiled R classes to a table.
+     *
+     * @param packageName
+     *            The package of the R class, for compiled R classes
+     * @param styleableAttrs
+     *            If not null, an edge between each styleable attribute and the attr it corresponds to is added to this, in both directions
+     */
+    static void readResources(final File symbolFile, final String packageName, final ResourceTable resources, final ResourceGraph styleableAttrs)
+            throws IOException {
+        final Set<String> styleableArrays = new HashSet<String>();
 
-        boolean done = false;
+        SymbolReader.read(symbolFile, packageName, resources, styleableArrays);
 
-        final Set<Resource> resources = new HashSet<Resource>();
+        if (styleableAttrs != null) {
+            indexStyleableAttrs(resources, styleableArrays, styleableAttrs);
+        }
+    }
 
-        String type = "";
+    /**
+     * Matches each styleable attribute (Styleable_attr) to its attr. Both the styleable and the attr can contain '_', so every split where the prefix is one
+     * of the styleable arrays and the suffix is an attr is kept.
+     */
+    private static void indexStyleableAttrs(final ResourceTable resources, final Set<String> styleableArrays, final ResourceGraph styleableAttrs) {
+        for (int id = 0; id < resources.size(); id++) {
+            if (!resources.getType(id).equals("styleable")) {
+                continue;
+            }
 
-        while (!done) {
-            final String line = reader.readLine();
-            done = (line == null);
+            final String name = resources.getName(id);
+
+            for (int separator = name.indexOf('_'); separator >= 0; separator = name.indexOf('_', separator + 1)) {
+                if (!styleableArrays.contains(name.substring(0, separator))) {
+                    continue;
+                }
 
-            if (line != null) {
-                final Matcher typeMatcher = sResourceTypePattern.matcher(line);
-                final Matcher nameMatcher = sResourceNamePattern.matcher(line);
+                final int attr = resources.getId("attr", name.substring(separator + 1));
 
-                if (nameMatcher.find()) {
-                    resources.add(new Resource(type, nameMatcher.group(3)));
-                } else if (typeMatcher.find()) {
-                    type = typeMatcher.group(1);
+                if (attr >= 0) {
+                    styleableAttrs.addReference(id, attr);
+                    styleableAttrs.addReference(attr, id);
                 }
             }
         }
-
-        reader.close();
-        inputStream.close();
-
-        return resources;
     }
 
-    private void searchFiles(final File parent, final File file, final FileType fileType) {
+    private void searchFiles(final File parent, final File file, final FileType fileType, final ResourceGraph graph) {
+        if (mForkJoinPool != null) {
+            graph.addAll(mForkJoinPool.invoke(new SearchTask(parent, file, fileType)));
+            return;
+        }
+
         if (file.isDirectory()) {
             for (final File child : file.listFiles()) {
-                searchFiles(file, child, fileType);
+                searchFiles(file, child, fileType, graph);
             }
         } else if (file.getName().endsWith(fileType.getExtension())) {
             try {
-                searchFile(parent, file, fileType);
+                searchFile(parent, file, fileType, graph);
             } catch (final IOException e) {
-                System.err.println("There was a problem reading " + file.getAbsolutePath());
-                e.printStackTrace();
+                mErrors.println("There was a problem reading " + file.getAbsolutePath());
+                e.printStackTrace(mErrors);
             }
         }
     }
 
-    private void searchFile(final File parent, final File file, final FileType fileType) throws IOException {
-        final Set<Resource> foundResources = new HashSet<Resource>();
+    /**
+     * Adds the references made by a file to the graph. This does not modify the scanner, so it can be called concurrently as long as each thread has its own
+     * graph.
+     */
+    void searchFile(final File parent, final File file, final FileType fileType, final ResourceGraph graph) throws IOException {
+        final Map<Resource, Set<Resource>> references;
+        final Map<Resource, Set<Resource>> specialUsages;
 
-        final String fileContents = FileUtilities.getFileContents(file);
+        if (mReferenceCache != null) {
+            final ReferenceCache.Entry entry = getCacheEntry(parent, file, fileType);
 
-        for (final Resource resource : mResources) {
-            final Matcher matcher = fileType.getPattern(resource.getType(), resource.getName().replace("_", "[_\\.]")).matcher(fileContents);
+            references = entry.getReferences();
+            specialUsages = entry.getSpecialUsages();
+        } else {
+            final CharSequence fileContents = FileUtilities.getFileContents(file);
+            final Owners owners = getOwners(parent, file, fileContents);
 
-            if (matcher.find()) {
-                foundResources.add(resource);
-            } else {
-                final ResourceType type = sResourceTypes.get(resource.getType());
+            references = findReferences(fileContents, fileType, owners);
+            specialUsages = findSpecialUsages(parent, fileContents, owners);
+        }
+
+        addReferences(graph, references);
+        addReferences(graph, specialUsages);
+    }
+
+    private void addReferences(final ResourceGraph graph, final Map<Resource, Set<Resource>> references) {
+        for (final Map.Entry<Resource, Set<Resource>> entry : references.entrySet()) {
+            // If R.java doesn't know about the resource that makes the references, nothing can make it unused, so they're roots
+            final int owner = entry.getKey() == null ? -1 : mResourceTable.getId(entry.getKey());
+
+            for (final Resource resource : entry.getValue()) {
+                final int id = mResourceTable.getId(resource);
+
+                // A reference to something R.java doesn't know about can't make anything used
+                if (id >= 0) {
+                    graph.addReference(owner, id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets what was extracted from a file from the cache, scanning it if it's not cached. Everything the file uses is cached, whether or not it's a resource
+     * R.java knows about, so the entry remains valid for the next run.
+     */
+    private ReferenceCache.Entry getCacheEntry(final File parent, final File file, final FileType fileType) throws IOException {
+        final ReferenceCache.Entry cachedEntry = mReferenceCache.get(file);
+
+        if (cachedEntry != null && cachedEntry.getReferences() != null && cachedEntry.getSpecialUsages() != null) {
+            return cachedEntry;
+        }
+
+        final CharSequence fileContents = FileUtilities.getFileContents(file);
+        final ReferenceCache.Entry entry = mReferenceCache.get(file, ReferenceCache.hash(fileContents));
+        final Owners owners = getOwners(parent, file, fileContents);
+
+        if (entry.getReferences() == null) {
+            entry.setReferences(findReferences(fileContents, fileType, owners));
+        }
+
+        if (entry.getSpecialUsages() == null) {
+            entry.setSpecialUsages(findSpecialUsages(parent, fileContents, owners));
+        }
+
+        return entry;
+    }
+
+    /**
+     * Lexes a file for references, keyed by the resource whose declaration each one is in.
+     */
+    private static Map<Resource, Set<Resource>> findReferences(final CharSequence fileContents, final FileType fileType, final Owners owners) {
+        final Map<Resource, Set<Resource>> references = new LinkedHashMap<Resource, Set<Resource>>();
+
+        fileType.findReferences(fileContents, new FileType.ReferenceListener() {
+            @Override
+            public void onReference(final Resource resource, final int position) {
+                addOwnedResource(references, owners.getOwner(position), resource);
+            }
+        });
+
+        return references;
+    }
+
+    /**
+     * Finds the special uses of the resources of each type in a single pass per type, keyed by the resource whose declaration each one is in.
+     */
+    private Map<Resource, Set<Resource>> findSpecialUsages(final File parent, final CharSequence fileContents, final Owners owners) {
+        final Map<Resource, Set<Resource>> specialUsages = new LinkedHashMap<Resource, Set<Resource>>();
+
+        for (final Map.Entry<String, NameMatcher<Resource>> entry : mUsageMatchers.entrySet()) {
+            final ResourceType type = sResourceTypes.get(entry.getKey());
+
+            if (!type.canFileHaveSpecialUsages(parent)) {
+                continue;
+            }
+
+            entry.getValue().findMatches(fileContents, new NameMatcher.MatchListener<Resource>() {
+                @Override
+                public void onMatch(final Resource resource, final int start, final int end) {
+                    if (type.isSpecialUsage(fileContents, start, end)) {
+                        addOwnedResource(specialUsages, owners.getOwner(start), resource);
+                    }
+                }
+            });
+        }
+
+        return specialUsages;
+    }
+
+    private static void addOwnedResource(final Map<Resource, Set<Resource>> resources, final Resource owner, final Resource resource) {
+        Set<Resource> ownedResources = resources.get(owner);
+
+        if (ownedResources == null) {
+            ownedResources = new LinkedHashSet<Resource>();
+            resources.put(owner, ownedResources);
+        }
+
+        ownedResources.add(resource);
+    }
+
+    /**
+     * Works out which resource's declaration a file, or each part of a values file, belongs to. Files outside the res directory don't belong to any.
+     */
+    private Owners getOwners(final File parent, final File file, final CharSequence fileContents) {
+        if (parent == null || !mResDirectory.equals(parent.getParentFile())) {
+            return new Owners(null, null);
+        }
+
+        final String directoryType = parent.getName().split("-")[0];
 
-                if (type != null && type.doesFileUseResource(parent, file.getName(), fileContents, resource.getName().replace("_", "[_\\.]"))) {
-                    foundResources.add(resource);
+        if (directoryType.equals("values")) {
+            return new Owners(null, ValuesIndex.findElements(fileContents));
+        }
+
+        return new Owners(new Resource(directoryType, file.getName().split("\\.")[0]), null);
+    }
+
+    /**
+     * The resource whose declaration each position in a file belongs to.
+     */
+    private static class Owners {
+        private final Resource mFileResource;
+        private final List<ValuesIndex.Element> mElements;
+
+        /**
+         * @param fileResource
+         *            The resource declared by the whole file, or null
+         * @param elements
+         *            The resources declared by parts of the file, or null
+         */
+        public Owners(final Resource fileResource, final List<ValuesIndex.Element> elements) {
+            super();
+            mFileResource = fileResource;
+            mElements = elements;
+        }
+
+        /**
+         * @return the resource whose declaration contains the position, or null if it's not in one
+         */
+        public Resource getOwner(final int position) {
+            if (mElements == null) {
+                return mFileResource;
+            }
+
+            // Find the last element that starts at or before the position
+            int low = 0;
+            int high = mElements.size() - 1;
+
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+
+                if (mElements.get(middle).getStart() <= position) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            if (high >= 0 && position < mElements.get(high).getEnd()) {
+                return mElements.get(high).getResource();
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Builds a matcher over the names of the resources of each type that has special uses.
+     */
+    private void buildUsageMatchers() {
+        mUsageMatchers.clear();
+
+        final Map<String, Map<String, Resource>> names = new HashMap<String, Map<String, Resource>>();
+
+        for (int id = 0; id < mResourceTable.size(); id++) {
+            final String typeName = mResourceTable.getType(id);
+            final ResourceType type = sResourceTypes.get(typeName);
+
+            if (type != null && type.hasSpecialUsages()) {
+                Map<String, Resource> typeNames = names.get(typeName);
+
+                if (typeNames == null) {
+                    typeNames = new HashMap<String, Resource>();
+                    names.put(typeName, typeNames);
                 }
+
+                typeNames.put(mResourceTable.getName(id), mResourceTable.get(id));
             }
         }
 
-        for (final Resource resource : foundResources) {
-            mUsedResources.add(resource);
-            mResources.remove(resource);
+        for (final Map.Entry<String, Map<String, Resource>> entry : names.entrySet()) {
+            mUsageMatchers.put(entry.getKey(), new NameMatcher<Resource>(entry.getValue()));
+        }
+    }
+
+    /**
+     * Identifies the names the usage matchers were built over, so cached special uses are only reused when they were matched against the same names.
+     */
+    private long getUsageMatcherFingerprint() {
+        final SortedSet<String> names = new TreeSet<String>();
+
+        for (int id = 0; id < mResourceTable.size(); id++) {
+            if (mUsageMatchers.containsKey(mResourceTable.getType(id))) {
+                names.add(mResourceTable.getType(id) + '/' + mResourceTable.getName(id));
+            }
+        }
+
+        final StringBuilder stringBuilder = new StringBuilder();
+
+        for (final String name : names) {
+            stringBuilder.append(name).append('\n');
+        }
+
+        return ReferenceCache.hash(stringBuilder);
+    }
+
+    /**
+     * Finds the paths where resources are declared in the res tree, and adds them (and their configurations) to the resources.
+     */
+    private void findDeclaredPaths(final Collection<Resource> resources) {
+        final SortedMap<String, SortedMap<String, Resource>> resourceMap = groupByType(resources);
+
+        // Ensure we only try to find resource types that exist in the map we just built
+        final Map<String, ResourceType> resourceTypes = new HashMap<String, ResourceType>(resourceMap.size());
+
+        for (final String type : resourceMap.keySet()) {
+            final ResourceType resourceType = sResourceTypes.get(type);
+            if (resourceType != null) {
+                resourceTypes.put(type, resourceType);
+            }
+        }
+
+        findDeclaredPaths(resourceTypes, resourceMap);
+    }
+
+    private void findDeclaredPaths(final Map<String, ResourceType> resourceTypes, final Map<String, SortedMap<String, Resource>> resources) {
+        if (mValuesIndex == null) {
+            mValuesIndex = ValuesIndex.build(mResDirectory, mForkJoinPool, mReferenceCache);
+        }
+
+        // Files that were indexed are skipped by the walk
+        findDeclaredPaths(null, mResDirectory, resourceTypes, resources);
+
+        // Everything declared in the values files is a lookup in the index
+        for (final String type : resourceTypes.keySet()) {
+            final Map<String, Resource> typeMap = resources.get(type);
+
+            if (typeMap != null) {
+                for (final Resource resource : typeMap.values()) {
+                    for (final ValuesIndex.Location location : mValuesIndex.getLocations(type, resource.getName())) {
+                        resource.addDeclaredPath(location.getPath());
+                        resource.addConfiguration(location.getConfiguration());
+                    }
+                }
+            }
         }
     }
 
     private void findDeclaredPaths(final File parent, final File file, final Map<String, ResourceType> resourceTypes,
             final Map<String, SortedMap<String, Resource>> resources) {
+        if (mForkJoinPool != null) {
+            addDeclaredPaths(mForkJoinPool.invoke(new DeclarationTask(parent, file, resourceTypes, resources)));
+            return;
+        }
+
         if (file.isDirectory()) {
             for (final File child : file.listFiles()) {
                 if (!child.isHidden()) {
@@ -1020,30 +2096,217 @@ public class ResourceScanner {
             }
         } else {
             if (!file.isHidden()) {
-                final String fileName = file.getName();
+                addDeclaredPaths(findDeclarations(parent, file, resourceTypes, resources));
+            }
+        }
+    }
+
+    /**
+     * Finds the resources declared in a file that isn't in the values index. This does not modify the resources, so it can be called concurrently.
+     */
+    private List<Declaration> findDeclarations(final File parent, final File file, final Map<String, ResourceType> resourceTypes,
+            final Map<String, SortedMap<String, Resource>> resources) {
+        final List<Declaration> declarations = new ArrayList<Declaration>();
+
+        if (mValuesIndex.isIndexed(file)) {
+            return declarations;
+        }
 
-                String fileContents = "";
+        final String fileName = file.getName();
+        final String directoryType = parent.getName().split("-")[0];
+
+        // A file named after the resource it declares is a lookup by name
+        final ResourceType fileNameResourceType = sFileNameResourceTypes.get(directoryType);
+
+        if (fileNameResourceType != null && resourceTypes.containsKey(fileNameResourceType.getType())) {
+            final Map<String, Resource> typeMap = resources.get(fileNameResourceType.getType());
+            final Resource resource = typeMap == null ? null : typeMap.get(fileName.split("\\.")[0]);
+
+            if (resource != null) {
+                declarations.add(new Declaration(resource, file.getAbsolutePath(), parent.getName()));
+            }
+        }
+
+        // Only read the file if it's XML and a type that can be declared in its contents is being looked for
+        final List<ResourceType> contentResourceTypes = sContentResourceTypes.get(directoryType);
+
+        if (contentResourceTypes == null || !fileName.endsWith(".xml")) {
+            return declarations;
+        }
+
+        CharSequence fileContents = null;
+
+        for (final ResourceType resourceType : contentResourceTypes) {
+            final Map<String, Resource> typeMap = resources.get(resourceType.getType());
+
+            if (typeMap == null || !resourceTypes.containsKey(resourceType.getType())) {
+                continue;
+            }
+
+            if (fileContents == null) {
                 try {
                     fileContents = FileUtilities.getFileContents(file);
                 } catch (final IOException e) {
-                    e.printStackTrace();
+                    mErrors.println("There was a problem reading " + file.getAbsolutePath());
+                    e.printStackTrace(mErrors);
+                    return declarations;
                 }
+            }
 
-                for (final ResourceType resourceType : resourceTypes.values()) {
-                    final Map<String, Resource> typeMap = resources.get(resourceType.getType());
-
-                    if (typeMap != null) {
-                        for (final Resource resource : typeMap.values()) {
-                            if (resourceType.doesFileDeclareResource(parent, fileName, fileContents, resource.getName().replace("_", "[_\\.]"))) {
-                                resource.addDeclaredPath(file.getAbsolutePath());
+            if (directoryType.equals("layout") && resourceType.getType().equals("id")) {
+                // A layout can declare any number of ids, so they're all found in one pass rather than a pattern per id
+                for (final String id : ValuesIndex.findDeclaredIds(fileContents)) {
+                    final Resource resource = typeMap.get(id);
 
-                                final String configuration = parent.getName();
-                                resource.addConfiguration(configuration);
-                            }
-                        }
+                    if (resource != null) {
+                        declarations.add(new Declaration(resource, file.getAbsolutePath(), parent.getName()));
                     }
                 }
+
+                continue;
+            }
+
+            for (final Resource resource : typeMap.values()) {
+                if (resourceType.doesFileDeclareResource(parent, fileName, fileContents, resource.getName().replace("_", "[_\\.]"))) {
+                    declarations.add(new Declaration(resource, file.getAbsolutePath(), parent.getName()));
+                }
+            }
+        }
+
+        return declarations;
+    }
+
+    private static void addDeclaredPaths(final List<Declaration> declarations) {
+        for (final Declaration declaration : declarations) {
+            declaration.mResource.addDeclaredPath(declaration.mPath);
+            declaration.mResource.addConfiguration(declaration.mConfiguration);
+        }
+    }
+
+    /**
+     * A resource declaration found in a file, to be added to the resource once the scan is complete.
+     */
+    private static class Declaration {
+        private final Resource mResource;
+        private final String mPath;
+        private final String mConfiguration;
+
+        public Declaration(final Resource resource, final String path, final String configuration) {
+            super();
+            mResource = resource;
+            mPath = path;
+            mConfiguration = configuration;
+        }
+    }
+
+    /**
+     * Searches a tree in parallel. Each directory forks a task per child, and merges the graphs they build.
+     */
+    private class SearchTask extends RecursiveTask<ResourceGraph> {
+        private static final long serialVersionUID = 1L;
+
+        private final File mParent;
+        private final File mFile;
+        private final FileType mFileType;
+
+        public SearchTask(final File parent, final File file, final FileType fileType) {
+            super();
+            mParent = parent;
+            mFile = file;
+            mFileType = fileType;
+        }
+
+        @Override
+        protected ResourceGraph compute() {
+            final ResourceGraph graph = new ResourceGraph();
+
+            if (mFile.isDirectory()) {
+                final List<SearchTask> tasks = new ArrayList<SearchTask>();
+
+                for (final File child : mFile.listFiles()) {
+                    tasks.add(new SearchTask(mFile, child, mFileType));
+                }
+
+                invokeAll(tasks);
+
+                for (final SearchTask task : tasks) {
+                    graph.addAll(task.join());
+                }
+            } else if (mFile.getName().endsWith(mFileType.getExtension())) {
+                try {
+                    searchFile(mParent, mFile, mFileType, graph);
+                } catch (final IOException e) {
+                    mErrors.println("There was a problem reading " + mFile.getAbsolutePath());
+                    e.printStackTrace(mErrors);
+                }
+            }
+
+            return graph;
+        }
+    }
+
+    /**
+     * Loads the symbols of a library project, so the library projects can be loaded in parallel.
+     */
+    private class LibraryTask extends RecursiveTask<ResourceTable> {
+        private static final long serialVersionUID = 1L;
+
+        private final File mLibraryProjectDirectory;
+
+        public LibraryTask(final File libraryProjectDirectory) {
+            super();
+            mLibraryProjectDirectory = libraryProjectDirectory;
+        }
+
+        @Override
+        protected ResourceTable compute() {
+            return getLibraryProjectResources(mLibraryProjectDirectory);
+        }
+    }
+
+    /**
+     * Finds declarations in a tree in parallel. Each directory forks a task per child, and the results are merged in the same order as a serial walk.
+     */
+    private class DeclarationTask extends RecursiveTask<List<Declaration>> {
+        private static final long serialVersionUID = 1L;
+
+        private final File mParent;
+        private final File mFile;
+        private final Map<String, ResourceType> mResourceTypes;
+        private final Map<String, SortedMap<String, Resource>> mResources;
+
+        public DeclarationTask(final File parent, final File file, final Map<String, ResourceType> resourceTypes,
+                final Map<String, SortedMap<String, Resource>> resources) {
+            super();
+            mParent = parent;
+            mFile = file;
+            mResourceTypes = resourceTypes;
+            mResources = resources;
+        }
+
+        @Override
+        protected List<Declaration> compute() {
+            if (!mFile.isDirectory()) {
+                return findDeclarations(mParent, mFile, mResourceTypes, mResources);
+            }
+
+            final List<DeclarationTask> tasks = new ArrayList<DeclarationTask>();
+
+            for (final File child : mFile.listFiles()) {
+                if (!child.isHidden()) {
+                    tasks.add(new DeclarationTask(mFile, child, mResourceTypes, mResources));
+                }
             }
+
+            invokeAll(tasks);
+
+            final List<Declaration> declarations = new ArrayList<Declaration>();
+
+            for (final DeclarationTask task : tasks) {
+                declarations.addAll(task.join());
+            }
+
+            return declarations;
         }
     }
 }
@@ -0,0 +1,166 @@
+package ca.skennedy.androidunusedresources;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * <p>
+ * The resources in R.java, each with a dense id from 0 to {@link #size()} - 1 in the order they were added. Sets of resources can then be {@link BitSet}s
+ * of ids, and the graph of references can be arrays of ids.
+ * </p>
+ * <p>
+ * Only the types and names are stored, in an open addressing hash table of ids, so there's no object per resource. A {@link Resource} is only created when
+ * one is asked for, to collect its declarations or to be reported, and the same one is returned every time after that.
+ * </p>
+ */
+public class ResourceTable {
+    private final List<String> mTypes = new ArrayList<String>();
+
+    private int[] mTypeIndexes = new int[64];
+    private String[] mNames = new String[64];
+    private Resource[] mResources = new Resource[64];
+    private int mSize = 0;
+
+    /**
+     * Ids + 1, indexed by hash, with 0 for an empty slot. Kept at most half full.
+     */
+    private int[] mSlots = new int[128];
+
+    /**
+     * Adds a resource if it isn't already in the table.
+     *
+     * @return the resource's id
+     */
+    public int add(final String type, final String name) {
+        int typeIndex = mTypes.indexOf(type);
+
+        if (typeIndex < 0) {
+            typeIndex = mTypes.size();
+            mTypes.add(type);
+        }
+
+        int slot = findSlot(typeIndex, name);
+
+        if (mSlots[slot] != 0) {
+            return mSlots[slot] - 1;
+        }
+
+        if (mSize == mNames.length) {
+            final int capacity = mSize * 2;
+            mTypeIndexes = Arrays.copyOf(mTypeIndexes, capacity);
+            mNames = Arrays.copyOf(mNames, capacity);
+            mResources = Arrays.copyOf(mResources, capacity);
+        }
+
+        final int id = mSize++;
+        mTypeIndexes[id] = typeIndex;
+        mNames[id] = name;
+
+        if (mSize * 2 > mSlots.length) {
+            rehash();
+        } else {
+            mSlots[slot] = id + 1;
+        }
+
+        return id;
+    }
+
+    /**
+     * @return the resource's id, or -1 if it isn't in the table
+     */
+    public int getId(final String type, final String name) {
+        final int typeIndex = mTypes.indexOf(type);
+
+        if (typeIndex < 0) {
+            return -1;
+        }
+
+        return mSlots[findSlot(typeIndex, name)] - 1;
+    }
+
+    /**
+     * @return the resource's id, or -1 if it isn't in the table
+     */
+    public int getId(final Resource resource) {
+        return getId(resource.getType(), resource.getName());
+    }
+
+    public boolean contains(final Resource resource) {
+        return getId(resource) >= 0;
+    }
+
+    public String getType(final int id) {
+        return mTypes.get(mTypeIndexes[id]);
+    }
+
+    public String getName(final int id) {
+        return mNames[id];
+    }
+
+    /**
+     * @return the resource with this id, which is created the first time it's asked for
+     */
+    public Resource get(final int id) {
+        if (mResources[id] == null) {
+            mResources[id] = new Resource(getType(id), mNames[id]);
+        }
+
+        return mResources[id];
+    }
+
+    /**
+     * @return the resources whose ids are set
+     */
+    public List<Resource> get(final BitSet ids) {
+        final List<Resource> resources = new ArrayList<Resource>(ids.cardinality());
+
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            resources.add(get(id));
+        }
+
+        return resources;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        mTypes.clear();
+        Arrays.fill(mNames, 0, mSize, null);
+        Arrays.fill(mResources, 0, mSize, null);
+        Arrays.fill(mSlots, 0);
+        mSize = 0;
+    }
+
+    /**
+     * @return the slot that holds the resource, or the empty slot where it would go
+     */
+    private int findSlot(final int typeIndex, final String name) {
+        final int mask = mSlots.length - 1;
+
+        for (int slot = hash(typeIndex, name) & mask;; slot = (slot + 1) & mask) {
+            final int id = mSlots[slot] - 1;
+
+            if (id < 0 || (mTypeIndexes[id] == typeIndex && mNames[id].equals(name))) {
+                return slot;
+            }
+        }
+    }
+
+    private void rehash() {
+        mSlots = new int[mSlots.length * 2];
+
+        for (int id = 0; id < mSize; id++) {
+            mSlots[findSlot(mTypeIndexes[id], mNames[id])] = id + 1;
+        }
+    }
+
+    private static int hash(final int typeIndex, final String name) {
+        // Spread the bits, since names that differ only in a trailing number have nearby hashes
+        final int hash = (name.hashCode() + typeIndex * 31) * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+}
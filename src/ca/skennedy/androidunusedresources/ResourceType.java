@@ -1,8 +1,16 @@
 package ca.skennedy.androidunusedresources;
 
 import java.io.File;
+import java.util.regex.Pattern;
 
 public abstract class ResourceType {
+    public static final int DEFAULT_PATTERN_CACHE_SIZE = 20000;
+
+    /**
+     * The patterns built from resource names by the declaration checks, shared by every type.
+     */
+    private static final PatternCache sPatternCache = new PatternCache(DEFAULT_PATTERN_CACHE_SIZE);
+
     private final String mType;
 
     public ResourceType(final String type) {
@@ -14,18 +22,122 @@ public abstract class ResourceType {
         return mType;
     }
 
-    public abstract boolean doesFileDeclareResource(File parent, String fileName, String fileContents, String resourceName);
+    public static PatternCache getPatternCache() {
+        return sPatternCache;
+    }
+
+    /**
+     * Gets a compiled pattern from the cache, so a check only compiles the pattern for a given resource once rather than once per file.
+     */
+    protected static Pattern getPattern(final String regex) {
+        return sPatternCache.getPattern(regex);
+    }
+
+    public abstract boolean doesFileDeclareResource(File parent, String fileName, CharSequence fileContents, String resourceName);
+
+    /**
+     * Whether this type has special uses (i.e. not a simple reference to the resource) that need to be checked with {@link #isSpecialUsage}.
+     *
+     * @return true if the type has special uses, false otherwise
+     */
+    public boolean hasSpecialUsages() {
+        return false;
+    }
 
     /**
-     * Scans a file for special uses of the resource (i.e. not a simple string match on the resource name).
-     * 
+     * Checks if a file can contain special uses of resources of this type.
+     *
      * @param parent
-     * @param fileName
+     *            The directory containing the file, or null if the file is not in the resource tree
+     * @return true if the file should be checked, false otherwise
+     */
+    public boolean canFileHaveSpecialUsages(final File parent) {
+        return false;
+    }
+
+    /**
+     * Checks if an occurrence of a resource name in a file is a special use of the resource.
+     *
      * @param fileContents
-     * @param resourceName
+     * @param start
+     *            The index of the first character of the name
+     * @param end
+     *            The index after the last character of the name
      * @return true if used, false otherwise
      */
-    public boolean doesFileUseResource(final File parent, final String fileName, final String fileContents, final String resourceName) {
+    public boolean isSpecialUsage(final CharSequence fileContents, final int start, final int end) {
         return false;
     }
+
+    /**
+     * Finds the start of an attribute whose quoted value begins at <code>quote</code>, i.e. <code>attribute\s*=\s*"</code>.
+     *
+     * @return the index of the start of the attribute name, or -1 if the attribute doesn't precede the quote
+     */
+    protected static int findAttributeBefore(final CharSequence fileContents, final int quote, final String attribute) {
+        if (quote < 0 || quote >= fileContents.length() || fileContents.charAt(quote) != '"') {
+            return -1;
+        }
+
+        int position = skipWhitespaceBackwards(fileContents, quote - 1);
+
+        if (position < 0 || fileContents.charAt(position) != '=') {
+            return -1;
+        }
+
+        position = skipWhitespaceBackwards(fileContents, position - 1);
+
+        final int attributeStart = position + 1 - attribute.length();
+
+        if (attributeStart < 0 || !CharSequenceUtilities.startsWith(fileContents, attribute, attributeStart)) {
+            return -1;
+        }
+
+        return attributeStart;
+    }
+
+    /**
+     * Finds the end of a quoted value that follows an attribute name ending at <code>end</code>, i.e. <code>\s*=\s*".*?"</code>.
+     *
+     * @return the index of the closing quote, or -1 if there is no quoted value
+     */
+    protected static int findQuotedValueAfter(final CharSequence fileContents, final int end) {
+        int position = skipWhitespace(fileContents, end);
+
+        if (position >= fileContents.length() || fileContents.charAt(position) != '=') {
+            return -1;
+        }
+
+        position = skipWhitespace(fileContents, position + 1);
+
+        if (position >= fileContents.length() || fileContents.charAt(position) != '"') {
+            return -1;
+        }
+
+        return CharSequenceUtilities.indexOf(fileContents, '"', position + 1);
+    }
+
+    private static int skipWhitespace(final CharSequence fileContents, final int start) {
+        int position = start;
+
+        while (position < fileContents.length() && isWhitespace(fileContents.charAt(position))) {
+            position++;
+        }
+
+        return position;
+    }
+
+    private static int skipWhitespaceBackwards(final CharSequence fileContents, final int start) {
+        int position = start;
+
+        while (position >= 0 && isWhitespace(fileContents.charAt(position))) {
+            position--;
+        }
+
+        return position;
+    }
+
+    private static boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
 }
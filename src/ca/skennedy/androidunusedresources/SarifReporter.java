@@ -0,0 +1,85 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+
+/**
+ * <p>
+ * A SARIF 2.1.0 log with a run for the project, and a result for each unused resource, located at the files where it's declared. The locations are
+ * relative to the project directory, through the <code>PROJECT_ROOT</code> base URI, so the log can be read on another machine.
+ * </p>
+ * <p>
+ * The results are written as they're reported, between the run's header and footer, rather than as a whole document.
+ * </p>
+ */
+public class SarifReporter extends Reporter {
+    private static final String RULE_ID = "UnusedResource";
+    private static final String URI_BASE_ID = "PROJECT_ROOT";
+
+    private URI mProjectUri = null;
+    private boolean mFirstResult = true;
+
+    public SarifReporter(final Writer writer) {
+        super(writer);
+    }
+
+    @Override
+    public void begin(final File projectDirectory, final int unusedResourceCount) throws IOException {
+        mProjectUri = projectDirectory.getAbsoluteFile().toPath().toUri();
+        mFirstResult = true;
+
+        mWriter.write("{\n");
+        mWriter.write("  \"$schema\": \"https://json.schemastore.org/sarif-2.1.0.json\",\n");
+        mWriter.write("  \"version\": \"2.1.0\",\n");
+        mWriter.write("  \"runs\": [{\n");
+        mWriter.write("    \"tool\": {\"driver\": {\"name\": \"AndroidUnusedResources\", \"rules\": [{\"id\": \"" + RULE_ID
+                + "\", \"shortDescription\": {\"text\": \"A resource is declared but never used.\"}}]}},\n");
+        mWriter.write("    \"originalUriBaseIds\": {\"" + URI_BASE_ID + "\": {\"uri\": ");
+        JsonUtilities.writeQuoted(mWriter, mProjectUri.toString());
+        mWriter.write("}},\n");
+        mWriter.write("    \"results\": [");
+    }
+
+    @Override
+    public void report(final Resource resource) throws IOException {
+        mWriter.write(mFirstResult ? "\n" : ",\n");
+        mFirstResult = false;
+
+        mWriter.write("      {\"ruleId\": \"" + RULE_ID + "\", \"level\": \"warning\", \"message\": {\"text\": ");
+        JsonUtilities.writeQuoted(mWriter, "The " + resource.getType() + " resource " + resource.getName() + " is never used.");
+        mWriter.write("}, \"locations\": [");
+
+        boolean first = true;
+
+        for (final String path : resource.getDeclaredPaths()) {
+            if (!first) {
+                mWriter.write(", ");
+            }
+
+            final URI uri = mProjectUri.relativize(new File(path).getAbsoluteFile().toPath().toUri());
+
+            mWriter.write("{\"physicalLocation\": {\"artifactLocation\": {\"uri\": ");
+            JsonUtilities.writeQuoted(mWriter, uri.toString());
+
+            // A path outside the project stays absolute
+            if (!uri.isAbsolute()) {
+                mWriter.write(", \"uriBaseId\": \"" + URI_BASE_ID + "\"");
+            }
+
+            mWriter.write("}}}");
+            first = false;
+        }
+
+        mWriter.write("]}");
+    }
+
+    @Override
+    public void end() throws IOException {
+        mWriter.write(mFirstResult ? "]\n" : "\n    ]\n");
+        mWriter.write("  }]\n");
+        mWriter.write("}\n");
+        mWriter.flush();
+    }
+}
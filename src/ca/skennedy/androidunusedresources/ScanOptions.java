@@ -0,0 +1,75 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * What {@link ResourceScanner#scan(ScanOptions)} scans, and how.
+ */
+public class ScanOptions {
+    private final File mProjectDirectory;
+
+    private boolean mAosp = false;
+    private boolean mUseCache = false;
+    private ForkJoinPool mForkJoinPool = null;
+    private boolean mProfiled = false;
+
+    /**
+     * @param projectDirectory
+     *            The directory with the project's AndroidManifest.xml
+     */
+    public ScanOptions(final File projectDirectory) {
+        super();
+        mProjectDirectory = projectDirectory;
+    }
+
+    public File getProjectDirectory() {
+        return mProjectDirectory;
+    }
+
+    public boolean isAosp() {
+        return mAosp;
+    }
+
+    /**
+     * Looks for the generated sources in an AOSP build's output, in <code>$OUT_DIR</code>, rather than the project's gen directory.
+     */
+    public void setAosp(final boolean aosp) {
+        mAosp = aosp;
+    }
+
+    public boolean isUseCache() {
+        return mUseCache;
+    }
+
+    /**
+     * Keeps what was extracted from each file in the project's {@link ReferenceCache#DIRECTORY_NAME}, and the symbols of its library projects in theirs.
+     * Without this, they're only kept in memory by the scanner.
+     */
+    public void setUseCache(final boolean useCache) {
+        mUseCache = useCache;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return mForkJoinPool;
+    }
+
+    /**
+     * @param forkJoinPool
+     *            The pool to scan on, which can be shared by many scans, or null to scan on the calling thread
+     */
+    public void setForkJoinPool(final ForkJoinPool forkJoinPool) {
+        mForkJoinPool = forkJoinPool;
+    }
+
+    public boolean isProfiled() {
+        return mProfiled;
+    }
+
+    /**
+     * Times each phase of the scan, for {@link ScanResult#getPhaseTimes()}.
+     */
+    public void setProfiled(final boolean profiled) {
+        mProfiled = profiled;
+    }
+}
@@ -0,0 +1,73 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ * What {@link ResourceScanner#scan(ScanOptions)} found. Every resource is either used, unused, or neither: a library project's resource that the app
+ * doesn't override isn't reported either way.
+ * </p>
+ * <p>
+ * The resources have their declared paths and configurations. They belong to the result, so scanning again with the same scanner doesn't change them.
+ * </p>
+ */
+public class ScanResult {
+    private final File mProjectDirectory;
+    private final String mPackageName;
+    private final int mResourceCount;
+    private final SortedSet<Resource> mUnusedResources;
+    private final SortedSet<Resource> mUsedResources;
+    private final long mScanTimeMillis;
+    private final Map<String, Long> mPhaseTimes;
+
+    ScanResult(final File projectDirectory, final String packageName, final int resourceCount, final Collection<Resource> unusedResources,
+            final Collection<Resource> usedResources, final long scanTimeMillis, final Map<String, Long> phaseTimes) {
+        super();
+        mProjectDirectory = projectDirectory;
+        mPackageName = packageName;
+        mResourceCount = resourceCount;
+        mUnusedResources = Collections.unmodifiableSortedSet(new TreeSet<Resource>(unusedResources));
+        mUsedResources = Collections.unmodifiableSortedSet(new TreeSet<Resource>(usedResources));
+        mScanTimeMillis = scanTimeMillis;
+        mPhaseTimes = Collections.unmodifiableMap(phaseTimes);
+    }
+
+    public File getProjectDirectory() {
+        return mProjectDirectory;
+    }
+
+    public String getPackageName() {
+        return mPackageName;
+    }
+
+    /**
+     * @return the number of resources in the project's symbols
+     */
+    public int getResourceCount() {
+        return mResourceCount;
+    }
+
+    public SortedSet<Resource> getUnusedResources() {
+        return mUnusedResources;
+    }
+
+    public SortedSet<Resource> getUsedResources() {
+        return mUsedResources;
+    }
+
+    public long getScanTimeMillis() {
+        return mScanTimeMillis;
+    }
+
+    /**
+     * @return Phase->(Wall time in milliseconds), in the order the phases ran, or an empty map if the scan wasn't profiled
+     */
+    public Map<String, Long> getPhaseTimes() {
+        return mPhaseTimes;
+    }
+}
@@ -0,0 +1,233 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Caches the resource tables of library projects, checked against the hash of their symbols' contents, so a library that hasn't changed isn't parsed
+ * again. Library projects rarely change and are shared by many apps, so the tables are kept in memory for the life of the process, and optionally in the
+ * library project's own cache directory, where every app that uses the library finds it. Only the latest table of each library is kept in memory, so a
+ * daemon that sees a library rebuilt many times doesn't keep every version.
+ * </p>
+ * <p>
+ * The symbols are still read to be hashed, but hashing is much cheaper than parsing.
+ * </p>
+ */
+public class SymbolCache {
+    private static final String FILE_NAME = "symbols.bin";
+
+    private static final int MAGIC = 0x5553594d; // USYM
+    private static final int VERSION = 1;
+
+    /**
+     * The latest table read from a library's symbols, and the hash of the symbols it was read from.
+     */
+    private static class Entry {
+        private final long mContentHash;
+        private final ResourceTable mResources;
+
+        public Entry(final long contentHash, final ResourceTable resources) {
+            super();
+            mContentHash = contentHash;
+            mResources = resources;
+        }
+    }
+
+    /**
+     * (Library directory:Package)->Entry
+     */
+    private static final Map<String, Entry> sEntries = new ConcurrentHashMap<String, Entry>();
+
+    private SymbolCache() {
+        super();
+    }
+
+    /**
+     * Gets a library project's resources, from the cache if its symbols are unchanged.
+     *
+     * @param persistent
+     *            true to also look for and save the table in the library project's cache directory
+     * @param errors
+     *            Where to print that the table couldn't be saved
+     */
+    public static ResourceTable getResources(final File libraryDirectory, final File symbolFile, final String packageName, final boolean persistent,
+            final PrintStream errors) throws IOException {
+        final long contentHash = hash(symbolFile);
+        final String key = libraryDirectory.getCanonicalPath() + ':' + packageName;
+
+        final Entry entry = sEntries.get(key);
+
+        if (entry != null && entry.mContentHash == contentHash) {
+            return entry.mResources;
+        }
+
+        final File cacheFile = new File(new File(libraryDirectory, ReferenceCache.DIRECTORY_NAME), FILE_NAME);
+        ResourceTable resources = null;
+
+        if (persistent) {
+            resources = load(cacheFile, packageName, contentHash);
+        }
+
+        if (resources == null) {
+            resources = ResourceScanner.getResourceList(symbolFile, packageName);
+
+            if (persistent) {
+                try {
+                    save(cacheFile, packageName, contentHash, resources);
+                } catch (final IOException e) {
+                    // A read only library project can still be scanned; it just isn't cached
+                    errors.println("The symbols of " + libraryDirectory.getAbsolutePath() + " could not be cached.");
+                }
+            }
+        }
+
+        // Replaces the table of the library's previous symbols, if any
+        sEntries.put(key, new Entry(contentHash, resources));
+        return resources;
+    }
+
+    /**
+     * Hashes the symbols. Compiled R classes are a class per type, so they're hashed together.
+     */
+    private static long hash(final File symbolFile) throws IOException {
+        if (!symbolFile.getName().endsWith(".class")) {
+            return hash(Files.readAllBytes(symbolFile.toPath()));
+        }
+
+        long hash = 0;
+        final DirectoryStream<Path> classFiles = Files.newDirectoryStream(symbolFile.getParentFile().toPath(), "R$*.class");
+
+        try {
+            for (final Path classFile : classFiles) {
+                // Order independent, since the directory's order isn't defined
+                hash += hash(Files.readAllBytes(classFile)) * 31 + classFile.getFileName().toString().hashCode();
+            }
+        } finally {
+            classFiles.close();
+        }
+
+        return hash;
+    }
+
+    private static long hash(final byte[] contents) {
+        FileUtilities.countRead(contents.length);
+        return ReferenceCache.hash(contents);
+    }
+
+    /**
+     * @return the cached table, or null if there isn't one for these symbols or it can't be read
+     */
+    private static ResourceTable load(final File file, final String packageName, final long contentHash) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            FileUtilities.countRead(file.length());
+
+            try {
+                if (input.readInt() != MAGIC || input.readInt() != VERSION || !input.readUTF().equals(packageName) || input.readLong() != contentHash) {
+                    return null;
+                }
+
+                final ResourceTable resources = new ResourceTable();
+                final int typeCount = input.readInt();
+
+                for (int i = 0; i < typeCount; i++) {
+                    final String type = input.readUTF();
+                    final int nameCount = input.readInt();
+
+                    for (int j = 0; j < nameCount; j++) {
+                        resources.add(type, input.readUTF());
+                    }
+                }
+
+                return resources;
+            } finally {
+                input.close();
+            }
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * <pre>
+     * magic, version, package, content hash
+     * type count, types:
+     *     type, name count, names...
+     * </pre>
+     */
+    private static void save(final File file, final String packageName, final long contentHash, final ResourceTable resources) throws IOException {
+        final File directory = file.getParentFile();
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory.getAbsolutePath());
+        }
+
+        // Group the names by type
+        final List<String> types = new ArrayList<String>();
+        final List<List<String>> names = new ArrayList<List<String>>();
+
+        for (int id = 0; id < resources.size(); id++) {
+            int typeIndex = types.indexOf(resources.getType(id));
+
+            if (typeIndex < 0) {
+                typeIndex = types.size();
+                types.add(resources.getType(id));
+                names.add(new ArrayList<String>());
+            }
+
+            names.get(typeIndex).add(resources.getName(id));
+        }
+
+        // Write to a temporary file first, so an interrupted save (or one from another app's scan) doesn't leave a partial cache behind
+        final File temporaryFile = File.createTempFile(FILE_NAME, ".tmp", directory);
+
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 64 * 1024));
+
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(packageName);
+            output.writeLong(contentHash);
+            output.writeInt(types.size());
+
+            for (int i = 0; i < types.size(); i++) {
+                output.writeUTF(types.get(i));
+                output.writeInt(names.get(i).size());
+
+                for (final String name : names.get(i)) {
+                    output.writeUTF(name);
+                }
+            }
+        } finally {
+            output.close();
+        }
+
+        if (!temporaryFile.renameTo(file)) {
+            file.delete();
+
+            if (!temporaryFile.renameTo(file)) {
+                temporaryFile.delete();
+                throw new IOException("Unable to replace " + file.getAbsolutePath());
+            }
+        }
+    }
+}
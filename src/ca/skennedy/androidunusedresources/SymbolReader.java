@@ -0,0 +1,563 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ * Reads the resources from the symbols a build generates: R.java, the R.txt symbol file aapt writes alongside it with <code>--output-text-symbols</code>,
+ * or the compiled R classes, either in a classes directory or in an R.jar.
+ * </p>
+ * <p>
+ * R.java is read with a tokenizer rather than line by line, so it doesn't matter how the fields are laid out or commented. The int and int[] fields of the
+ * classes nested in R are the resources, and the nested class's name is their type. R.txt has a symbol per line, in the form
+ * <code>int string app_name 0x7f0a0001</code> or <code>int[] styleable Button { 0x7f010000 }</code>. The compiled classes are the same fields, read from
+ * each R$type.class's field table, and an R.jar is opened as a zip file system rather than being extracted.
+ * </p>
+ */
+public class SymbolReader {
+    public static final String SYMBOL_FILE_NAME = "R.txt";
+
+    /**
+     * How deep under build/intermediates to look for an R.jar or a classes directory
+     */
+    private static final int MAX_BUILD_SEARCH_DEPTH = 5;
+
+    /**
+     * Identifiers are ASCII in generated symbols, so bytes map straight to chars
+     */
+    private static final Charset sCharset = Charset.forName("ISO-8859-1");
+
+    private SymbolReader() {
+        super();
+    }
+
+    /**
+     * <p>
+     * Finds the symbols to read a project's resources from. aapt's R.txt is much smaller and simpler to read than R.java, so it's used if it's next to the
+     * generated sources (in gen, the project directory or bin) and isn't older than R.java.
+     * </p>
+     * <p>
+     * Builds that don't generate R.java compile R directly, so without either of those, the compiled R classes are used: R.class in bin/classes, or the most
+     * recent R.jar or classes directory under build/intermediates that has the package's R. Other modules' R.jars, which only have their own packages' R
+     * classes, are skipped.
+     * </p>
+     *
+     * @param genDirectory
+     *            The generated sources, or null if there are none
+     * @return the R.txt, R.java, R.class or R.jar, or null if there is none
+     */
+    public static File find(final File projectDirectory, final File genDirectory, final String packageName) {
+        if (packageName == null) {
+            return null;
+        }
+
+        final File rJava = genDirectory == null ? null : new File(genDirectory, getPackagePath(packageName) + "/R.java");
+
+        final List<File> rTxtCandidates = new ArrayList<File>();
+
+        if (genDirectory != null) {
+            rTxtCandidates.add(new File(genDirectory, SYMBOL_FILE_NAME));
+            rTxtCandidates.add(new File(genDirectory.getParentFile(), SYMBOL_FILE_NAME));
+        }
+
+        rTxtCandidates.add(new File(projectDirectory, "bin/" + SYMBOL_FILE_NAME));
+
+        for (final File rTxt : rTxtCandidates) {
+            if (rTxt.isFile() && (rJava == null || !rJava.isFile() || rTxt.lastModified() >= rJava.lastModified())) {
+                return rTxt;
+            }
+        }
+
+        if (rJava != null && rJava.isFile()) {
+            return rJava;
+        }
+
+        final File binRClass = new File(projectDirectory, "bin/classes/" + getPackagePath(packageName) + "/R.class");
+
+        if (binRClass.isFile()) {
+            return binRClass;
+        }
+
+        final List<File> compiledCandidates = new ArrayList<File>();
+        findCompiledCandidates(new File(projectDirectory, "build/intermediates"), packageName, 0, compiledCandidates);
+
+        File newest = null;
+
+        for (final File candidate : compiledCandidates) {
+            if (newest == null || candidate.lastModified() > newest.lastModified()) {
+                newest = candidate;
+            }
+        }
+
+        return newest;
+    }
+
+    private static void findCompiledCandidates(final File directory, final String packageName, final int depth, final List<File> candidates) {
+        final File[] children = directory.listFiles();
+
+        if (children == null) {
+            return;
+        }
+
+        for (final File child : children) {
+            if (child.isDirectory()) {
+                final File rClass = new File(child, getPackagePath(packageName) + "/R.class");
+
+                if (child.getName().equals("classes") && rClass.isFile()) {
+                    candidates.add(rClass);
+                } else if (depth < MAX_BUILD_SEARCH_DEPTH) {
+                    findCompiledCandidates(child, packageName, depth + 1, candidates);
+                }
+            } else if (child.getName().equals("R.jar") && hasRClass(child, packageName)) {
+                candidates.add(child);
+            }
+        }
+    }
+
+    /**
+     * @return true if an R.jar has the package's R class, false if it doesn't or can't be opened
+     */
+    private static boolean hasRClass(final File jarFile, final String packageName) {
+        try {
+            final FileSystem jar = FileSystems.newFileSystem(jarFile.toPath(), (ClassLoader) null);
+
+            try {
+                return Files.isRegularFile(jar.getPath("/" + getPackagePath(packageName) + "/R.class"));
+            } finally {
+                jar.close();
+            }
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Adds every resource in an R.java, R.txt or compiled R classes to a table.
+     *
+     * @param packageName
+     *            The package of the R class, which picks it out of an R.jar that has the R classes of several packages
+     * @param styleableArrays
+     *            The names of the styleables that are arrays, rather than the index of an attribute in one, are added to this
+     */
+    public static void read(final File file, final String packageName, final ResourceTable resources, final Set<String> styleableArrays)
+            throws IOException {
+        final String fileName = file.getName();
+
+        if (fileName.endsWith(".jar")) {
+            readJar(file, packageName, resources, styleableArrays);
+            return;
+        }
+
+        if (fileName.endsWith(".class")) {
+            readClasses(file.getParentFile().toPath(), resources, styleableArrays);
+            return;
+        }
+
+        final byte[] contents = Files.readAllBytes(file.toPath());
+        FileUtilities.countRead(contents.length);
+
+        if (fileName.endsWith(".txt")) {
+            readSymbolFile(contents, resources, styleableArrays);
+        } else {
+            readRJava(contents, resources, styleableArrays);
+        }
+    }
+
+    private static String getPackagePath(final String packageName) {
+        return packageName.replace('.', '/');
+    }
+
+    private static void readJar(final File jarFile, final String packageName, final ResourceTable resources, final Set<String> styleableArrays)
+            throws IOException {
+        final FileSystem jar = FileSystems.newFileSystem(jarFile.toPath(), (ClassLoader) null);
+
+        try {
+            final Path packageDirectory = jar.getPath("/" + getPackagePath(packageName));
+
+            if (Files.isDirectory(packageDirectory)) {
+                readClasses(packageDirectory, resources, styleableArrays);
+            }
+        } finally {
+            jar.close();
+        }
+    }
+
+    /**
+     * Reads every R$type.class in a package's directory.
+     */
+    private static void readClasses(final Path packageDirectory, final ResourceTable resources, final Set<String> styleableArrays) throws IOException {
+        final DirectoryStream<Path> classFiles = Files.newDirectoryStream(packageDirectory, "R$*.class");
+
+        try {
+            for (final Path classFile : classFiles) {
+                final byte[] contents = Files.readAllBytes(classFile);
+                FileUtilities.countRead(contents.length);
+
+                readClass(contents, resources, styleableArrays);
+            }
+        } finally {
+            classFiles.close();
+        }
+    }
+
+    /**
+     * Reads the static int and int[] fields of a compiled R$type class. Only the constant pool's strings, the class's name and its field table are needed,
+     * so everything else in the constant pool is skipped by size.
+     */
+    private static void readClass(final byte[] contents, final ResourceTable resources, final Set<String> styleableArrays) throws IOException {
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(contents));
+
+        if (input.readInt() != 0xcafebabe) {
+            throw new IOException("Not a class file");
+        }
+
+        // Minor and major version
+        input.skipBytes(4);
+
+        final int constantCount = input.readUnsignedShort();
+        final String[] utf8Constants = new String[constantCount];
+        final int[] classNameIndexes = new int[constantCount];
+
+        for (int i = 1; i < constantCount; i++) {
+            final int tag = input.readUnsignedByte();
+
+            switch (tag) {
+            case 1: // Utf8
+                utf8Constants[i] = input.readUTF();
+                break;
+            case 7: // Class
+                classNameIndexes[i] = input.readUnsignedShort();
+                break;
+            case 8: // String
+            case 16: // MethodType
+            case 19: // Module
+            case 20: // Package
+                input.skipBytes(2);
+                break;
+            case 15: // MethodHandle
+                input.skipBytes(3);
+                break;
+            case 3: // Integer
+            case 4: // Float
+            case 9: // Fieldref
+            case 10: // Methodref
+            case 11: // InterfaceMethodref
+            case 12: // NameAndType
+            case 17: // Dynamic
+            case 18: // InvokeDynamic
+                input.skipBytes(4);
+                break;
+            case 5: // Long
+            case 6: // Double
+                // These take two entries
+                input.skipBytes(8);
+                i++;
+                break;
+            default:
+                throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        // Access flags, then this class
+        input.skipBytes(2);
+
+        final String className = utf8Constants[classNameIndexes[input.readUnsignedShort()]];
+        final int separator = className == null ? -1 : className.lastIndexOf('$');
+
+        // R itself has no fields, and anything else isn't part of R
+        if (separator < 0 || !className.substring(className.lastIndexOf('/') + 1, separator).equals("R")) {
+            return;
+        }
+
+        final String type = className.substring(separator + 1);
+
+        // Super class, then the interfaces
+        input.skipBytes(2);
+        input.skipBytes(2 * input.readUnsignedShort());
+
+        final int fieldCount = input.readUnsignedShort();
+
+        for (int i = 0; i < fieldCount; i++) {
+            input.skipBytes(2);
+
+            final String name = utf8Constants[input.readUnsignedShort()];
+            final String descriptor = utf8Constants[input.readUnsignedShort()];
+
+            if ("I".equals(descriptor)) {
+                resources.add(type, name);
+            } else if ("[I".equals(descriptor)) {
+                resources.add(type, name);
+
+                if (type.equals("styleable")) {
+                    styleableArrays.add(name);
+                }
+            }
+
+            // Attributes, such as the constant value
+            final int attributeCount = input.readUnsignedShort();
+
+            for (int j = 0; j < attributeCount; j++) {
+                input.skipBytes(2);
+                input.skipBytes(input.readInt());
+            }
+        }
+    }
+
+    private static void readSymbolFile(final byte[] contents, final ResourceTable resources, final Set<String> styleableArrays) {
+        int lineStart = 0;
+
+        while (lineStart < contents.length) {
+            int lineEnd = lineStart;
+
+            while (lineEnd < contents.length && contents[lineEnd] != '\n') {
+                lineEnd++;
+            }
+
+            int javaTypeStart = lineStart;
+
+            while (javaTypeStart < lineEnd && (contents[javaTypeStart] == ' ' || contents[javaTypeStart] == '\t' || contents[javaTypeStart] == '\r')) {
+                javaTypeStart++;
+            }
+
+            // The Java type, the resource type and the name, separated by spaces. Anything else is skipped.
+            final int javaTypeEnd = indexOf(contents, (byte) ' ', javaTypeStart, lineEnd);
+            final int typeEnd = !isJavaType(contents, javaTypeStart, javaTypeEnd) ? -1 : indexOf(contents, (byte) ' ', javaTypeEnd + 1, lineEnd);
+            final int nameEnd = typeEnd <= javaTypeEnd + 1 ? -1 : indexOf(contents, (byte) ' ', typeEnd + 1, lineEnd);
+
+            if (nameEnd > typeEnd + 1) {
+                final String type = new String(contents, javaTypeEnd + 1, typeEnd - javaTypeEnd - 1, sCharset);
+                final String name = new String(contents, typeEnd + 1, nameEnd - typeEnd - 1, sCharset);
+
+                resources.add(type, name);
+
+                if (javaTypeEnd - javaTypeStart == 5 && type.equals("styleable")) {
+                    styleableArrays.add(name);
+                }
+            }
+
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    /**
+     * @return true if the symbol's Java type, from start to end, is int or int[]
+     */
+    private static boolean isJavaType(final byte[] contents, final int start, final int end) {
+        if (end - start != 3 && end - start != 5) {
+            return false;
+        }
+
+        if (contents[start] != 'i' || contents[start + 1] != 'n' || contents[start + 2] != 't') {
+            return false;
+        }
+
+        return end - start == 3 || (contents[start + 3] == '[' && contents[start + 4] == ']');
+    }
+
+    private static int indexOf(final byte[] contents, final byte b, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (contents[i] == b) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static void readRJava(final byte[] contents, final ResourceTable resources, final Set<String> styleableArrays) {
+        final Tokenizer tokenizer = new Tokenizer(contents);
+
+        // 0 outside R, 1 in R, 2 in one of its type classes, and deeper in an array's initializer
+        int depth = 0;
+        String className = null;
+        String type = null;
+
+        while (tokenizer.next()) {
+            if (tokenizer.isSymbol('{')) {
+                depth++;
+
+                if (depth == 2) {
+                    type = className;
+                }
+            } else if (tokenizer.isSymbol('}')) {
+                depth--;
+
+                if (depth < 2) {
+                    type = null;
+                }
+            } else if (tokenizer.isIdentifier("class")) {
+                className = tokenizer.next() && tokenizer.isIdentifier() ? tokenizer.getText() : null;
+            } else if (depth == 2 && type != null && tokenizer.isIdentifier("int")) {
+                // int name = value; or int[] name = { values };
+                if (!tokenizer.next()) {
+                    break;
+                }
+
+                boolean array = false;
+
+                if (tokenizer.isSymbol('[')) {
+                    if (!tokenizer.next() || !tokenizer.isSymbol(']') || !tokenizer.next()) {
+                        continue;
+                    }
+
+                    array = true;
+                }
+
+                if (!tokenizer.isIdentifier()) {
+                    tokenizer.pushBack();
+                    continue;
+                }
+
+                final String name = tokenizer.getText();
+
+                if (!tokenizer.next()) {
+                    break;
+                }
+
+                if (tokenizer.isSymbol('=') || tokenizer.isSymbol(';')) {
+                    resources.add(type, name);
+
+                    if (array && type.equals("styleable")) {
+                        styleableArrays.add(name);
+                    }
+                } else {
+                    tokenizer.pushBack();
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits Java source into identifiers, numbers and single character symbols, skipping whitespace, comments and literals.
+     */
+    private static class Tokenizer {
+        private final byte[] mContents;
+
+        private int mPosition = 0;
+        private int mStart = 0;
+        private int mEnd = 0;
+        private boolean mPushedBack = false;
+
+        public Tokenizer(final byte[] contents) {
+            super();
+            mContents = contents;
+        }
+
+        /**
+         * Moves to the next token.
+         *
+         * @return false at the end of the contents
+         */
+        public boolean next() {
+            if (mPushedBack) {
+                mPushedBack = false;
+                return true;
+            }
+
+            final byte[] contents = mContents;
+            final int length = contents.length;
+            int position = mPosition;
+
+            while (position < length) {
+                final byte b = contents[position];
+
+                if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f') {
+                    position++;
+                } else if (b == '/' && position + 1 < length && contents[position + 1] == '/') {
+                    while (position < length && contents[position] != '\n') {
+                        position++;
+                    }
+                } else if (b == '/' && position + 1 < length && contents[position + 1] == '*') {
+                    position += 2;
+
+                    while (position + 1 < length && (contents[position] != '*' || contents[position + 1] != '/')) {
+                        position++;
+                    }
+
+                    position += 2;
+                } else if (b == '"' || b == '\'') {
+                    // A literal is skipped as a single symbol
+                    mStart = position++;
+
+                    while (position < length && contents[position] != b) {
+                        position += contents[position] == '\\' ? 2 : 1;
+                    }
+
+                    mEnd = Math.min(position + 1, length);
+                    mPosition = mEnd;
+                    return true;
+                } else {
+                    mStart = position;
+
+                    if (isIdentifierPart(b)) {
+                        while (position < length && isIdentifierPart(contents[position])) {
+                            position++;
+                        }
+                    } else {
+                        position++;
+                    }
+
+                    mEnd = position;
+                    mPosition = position;
+                    return true;
+                }
+            }
+
+            mPosition = length;
+            return false;
+        }
+
+        /**
+         * Makes the next call to {@link #next()} return the current token again.
+         */
+        public void pushBack() {
+            mPushedBack = true;
+        }
+
+        public boolean isSymbol(final char symbol) {
+            return mEnd - mStart == 1 && mContents[mStart] == symbol;
+        }
+
+        /**
+         * @return true if the token is a name, rather than a number or symbol
+         */
+        public boolean isIdentifier() {
+            final byte b = mContents[mStart];
+            return isIdentifierPart(b) && (b < '0' || b > '9');
+        }
+
+        public boolean isIdentifier(final String identifier) {
+            if (mEnd - mStart != identifier.length()) {
+                return false;
+            }
+
+            for (int i = 0; i < identifier.length(); i++) {
+                if (mContents[mStart + i] != identifier.charAt(i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        public String getText() {
+            return new String(mContents, mStart, mEnd - mStart, sCharset);
+        }
+
+        private static boolean isIdentifierPart(final byte b) {
+            return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_' || b == '$' || b < 0;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The report for people: each unused resource's type and name, then the paths where it's declared.
+ */
+public class TextReporter extends Reporter {
+    /**
+     * The width the types are padded to, so the names line up
+     */
+    private static final int TYPE_WIDTH = 10;
+
+    private static final String sPathIndent = "    ";
+
+    private int mUnusedResourceCount = 0;
+
+    public TextReporter(final Writer writer) {
+        super(writer);
+    }
+
+    @Override
+    public void begin(final File projectDirectory, final int unusedResourceCount) throws IOException {
+        mUnusedResourceCount = unusedResourceCount;
+
+        if (unusedResourceCount > 0) {
+            mWriter.write(unusedResourceCount + " unused resources were found:");
+            mWriter.write(LINE_SEPARATOR);
+        }
+    }
+
+    @Override
+    public void report(final Resource resource) throws IOException {
+        mWriter.write(resource.getType());
+
+        for (int i = resource.getType().length(); i < TYPE_WIDTH; i++) {
+            mWriter.write(' ');
+        }
+
+        mWriter.write(": ");
+        mWriter.write(resource.getName());
+
+        for (final String path : resource.getDeclaredPaths()) {
+            mWriter.write('\n');
+            mWriter.write(sPathIndent);
+            mWriter.write(path);
+        }
+
+        mWriter.write(LINE_SEPARATOR);
+    }
+
+    @Override
+    public void end() throws IOException {
+        if (mUnusedResourceCount > 0) {
+            mWriter.write(LINE_SEPARATOR);
+            mWriter.write("If any of the above resources are used, please submit your project as a test case so this application can be improved.");
+        } else {
+            mWriter.write("No unused resources were detected.");
+            mWriter.write(LINE_SEPARATOR);
+            mWriter.write("If you know you have some unused resources, please submit your project as a test case so this application can be improved.");
+        }
+
+        mWriter.write(LINE_SEPARATOR);
+        mWriter.flush();
+    }
+}
@@ -2,17 +2,33 @@ package ca.skennedy.androidunusedresources;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
+ * <p>
  * Generates a usage matrix that lists the various configurations each resource is defined under.
+ * </p>
+ * <p>
+ * Each type's configurations are given ids in the order they're first seen, which is the order of the matrix's columns, and each resource's configurations
+ * become a {@link BitSet} of those ids, so a cell is a bit lookup. The rows are written to the file as they're built, and the types are generated in
+ * parallel.
+ * </p>
+ * <p>
+ * This makes writing the matrices cheaper, not holding them: each {@link Resource} still keeps its configurations as a set of names, and the ids and bitsets
+ * are built again for each type every time its matrix is written.
+ * </p>
  */
 public class UsageMatrix {
     private final File mBaseDirectory;
@@ -27,16 +43,6 @@ public class UsageMatrix {
      */
     private final SortedMap<String, SortedMap<String, Resource>> mResources;
 
-    /**
-     * <p>
-     * ResourceType->(Configuration)
-     * </p>
-     * <p>
-     * string->(en-rUS)
-     * </p>
-     */
-    private final Map<String, LinkedHashSet<String>> mConfigurations = new HashMap<String, LinkedHashSet<String>>();
-
     private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
     public UsageMatrix(final File baseDirectory, final SortedMap<String, SortedMap<String, Resource>> resources) {
@@ -44,94 +50,158 @@ public class UsageMatrix {
         mResources = resources;
     }
 
-    public void generateMatrices() {
-        final File matrixDirectory = new File(mBaseDirectory, "resource-matrices");
+    /**
+     * @return true if the matrices will be generated for a project, which needs the configurations of every used resource
+     */
+    public static boolean isEnabled(final File baseDirectory) {
+        return getMatrixDirectory(baseDirectory).exists();
+    }
+
+    private static File getMatrixDirectory(final File baseDirectory) {
+        return new File(baseDirectory, "resource-matrices");
+    }
+
+    /**
+     * @param output
+     *            Where to report whether the matrices were generated
+     * @param errors
+     *            Where to print why a matrix couldn't be written
+     * @param forkJoinPool
+     *            The pool to generate the types' matrices on, or null to generate them on the calling thread
+     */
+    public void generateMatrices(final PrintStream output, final PrintStream errors, final ForkJoinPool forkJoinPool) {
+        final File matrixDirectory = getMatrixDirectory(mBaseDirectory);
 
         if (!matrixDirectory.exists()) {
-            System.out
-                    .println("Not generating resource qualifier matrices. If you would like them, create a directory named 'resource-matrices' in the base of your project.");
-            System.out.println();
+            output.println("Not generating resource qualifier matrices. If you would like them, create a directory named 'resource-matrices' in the "
+                    + "base of your project.");
+            output.println();
             return;
         }
 
-        System.out.println("Resource qualifier matrices generated.");
-        System.out.println();
+        output.println("Resource qualifier matrices generated.");
+        output.println();
 
-        generateConfigurationList();
+        if (forkJoinPool != null) {
+            final List<MatrixTask> tasks = new ArrayList<MatrixTask>();
 
-        for (final String resourceType : mResources.keySet()) {
-            final File resourceMatrix = new File(matrixDirectory, resourceType + ".csv");
+            for (final String resourceType : mResources.keySet()) {
+                final MatrixTask task = new MatrixTask(matrixDirectory, resourceType, errors);
+                forkJoinPool.execute(task);
+                tasks.add(task);
+            }
 
-            try {
-                final Writer writer = new BufferedWriter(new FileWriter(resourceMatrix));
-                writer.write(buildCsv(resourceType));
-                writer.close();
-            } catch (final IOException e) {
-                e.printStackTrace();
+            for (final MatrixTask task : tasks) {
+                task.join();
             }
-        }
-    }
 
-    private void generateConfigurationList() {
-        mConfigurations.clear();
+            return;
+        }
 
-        // Resource types
         for (final String resourceType : mResources.keySet()) {
-            // Set up the resource type
-            final LinkedHashSet<String> configurations = new LinkedHashSet<String>();
-            mConfigurations.put(resourceType, configurations);
+            generateMatrix(matrixDirectory, resourceType, errors);
+        }
+    }
 
-            final SortedMap<String, Resource> resources = mResources.get(resourceType);
+    private void generateMatrix(final File matrixDirectory, final String resourceType, final PrintStream errors) {
+        final File resourceMatrix = new File(matrixDirectory, resourceType + ".csv");
 
-            // All the resources of this type
-            for (final Resource resource : resources.values()) {
-                // Paths where it exists
-                for (final String configuration : resource.getConfigurations()) {
-                    configurations.add(configuration);
-                }
+        try {
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(resourceMatrix)), 64 * 1024);
+
+            try {
+                writeCsv(resourceType, writer);
+            } finally {
+                writer.close();
             }
+        } catch (final IOException e) {
+            errors.println("The " + resourceType + " matrix could not be written.");
+            e.printStackTrace(errors);
         }
     }
 
     /**
-     * Generates the CSV for a given resource type
+     * Writes the CSV for a given resource type
      * 
      * @param resourceType
-     *            The resource type for which to build the CSV
-     * @return a {@link String} in the format:
+     *            The resource type for which to write the CSV
+     * @param writer
+     *            Where to write the CSV, in the format:
      * 
-     *         <pre>
+     *            <pre>
      * ,ldpi,mdpi,hdpi,xhdpi
      * resource-name0,,X,X,
      * resource-name2,,X,X,X
      * resource-name1,,X,,
      * </pre>
      */
-    private String buildCsv(final String resourceType) {
-        final StringBuilder stringBuilder = new StringBuilder();
+    void writeCsv(final String resourceType, final Writer writer) throws IOException {
+        final SortedMap<String, Resource> resources = mResources.get(resourceType);
+
+        // Configuration->Id, in the order the configurations are first seen
+        final Map<String, Integer> configurationIds = new HashMap<String, Integer>();
+        final List<String> configurations = new ArrayList<String>();
+        final List<BitSet> resourceConfigurations = new ArrayList<BitSet>(resources.size());
+
+        for (final Resource resource : resources.values()) {
+            final BitSet bits = new BitSet();
 
-        final Set<String> configurations = mConfigurations.get(resourceType);
+            for (final String configuration : resource.getConfigurations()) {
+                Integer id = configurationIds.get(configuration);
+
+                if (id == null) {
+                    id = configurations.size();
+                    configurationIds.put(configuration, id);
+                    configurations.add(configuration);
+                }
+
+                bits.set(id);
+            }
+
+            resourceConfigurations.add(bits);
+        }
 
         // Header row
         for (final String configuration : configurations) {
-            stringBuilder.append(',').append(configuration);
+            writer.write(',');
+            writer.write(configuration);
         }
 
         // Resource rows
-        for (final Resource resource : mResources.get(resourceType).values()) {
-            stringBuilder.append(LINE_SEPARATOR).append(resource.getName());
+        int row = 0;
 
-            final Set<String> resourceConfigurations = resource.getConfigurations();
+        for (final Resource resource : resources.values()) {
+            writer.write(LINE_SEPARATOR);
+            writer.write(resource.getName());
 
-            for (final String configuration : configurations) {
-                stringBuilder.append(',');
+            final BitSet bits = resourceConfigurations.get(row++);
 
-                if (resourceConfigurations.contains(configuration)) {
-                    stringBuilder.append('X');
-                }
+            for (int id = 0; id < configurations.size(); id++) {
+                writer.write(bits.get(id) ? ",X" : ",");
             }
         }
+    }
 
-        return stringBuilder.toString();
+    /**
+     * Generates the matrix of a type, so the types can be generated in parallel.
+     */
+    private class MatrixTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final File mMatrixDirectory;
+        private final String mResourceType;
+        private final PrintStream mErrors;
+
+        public MatrixTask(final File matrixDirectory, final String resourceType, final PrintStream errors) {
+            super();
+            mMatrixDirectory = matrixDirectory;
+            mResourceType = resourceType;
+            mErrors = errors;
+        }
+
+        @Override
+        protected void compute() {
+            generateMatrix(mMatrixDirectory, mResourceType, mErrors);
+        }
     }
 }
@@ -0,0 +1,639 @@
+package ca.skennedy.androidunusedresources;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * <p>
+ * An index of the resources declared in the values directories, built by streaming each file once with a pull parser.
+ * </p>
+ * <p>
+ * ResourceType->(ResourceName->Locations)
+ * </p>
+ * <p>
+ * string->(app_name->[res/values/strings.xml (values), res/values-fr/strings.xml (values-fr)])
+ * </p>
+ */
+public class ValuesIndex {
+    public static class Location {
+        private final String mPath;
+        private final String mConfiguration;
+
+        public Location(final String path, final String configuration) {
+            super();
+            mPath = path;
+            mConfiguration = configuration;
+        }
+
+        public String getPath() {
+            return mPath;
+        }
+
+        public String getConfiguration() {
+            return mConfiguration;
+        }
+    }
+
+    /**
+     * A direct child of &lt;resources&gt;, and the resource it declares.
+     */
+    public static class Element {
+        private final int mStart;
+        private final int mEnd;
+        private final Resource mResource;
+
+        public Element(final int start, final int end, final Resource resource) {
+            super();
+            mStart = start;
+            mEnd = end;
+            mResource = resource;
+        }
+
+        /**
+         * @return the index of the element's '&lt;'
+         */
+        public int getStart() {
+            return mStart;
+        }
+
+        /**
+         * @return the index after the element's last '&gt;'
+         */
+        public int getEnd() {
+            return mEnd;
+        }
+
+        public Resource getResource() {
+            return mResource;
+        }
+    }
+
+    /**
+     * Elements whose name is the resource type, other than the arrays.
+     */
+    private static final Set<String> sTypeElements = new HashSet<String>();
+
+    static {
+        Collections.addAll(sTypeElements, "attr", "bool", "color", "dimen", "drawable", "fraction", "integer", "plurals", "string", "style");
+    }
+
+    private final Map<String, Map<String, List<Location>>> mDeclarations = new HashMap<String, Map<String, List<Location>>>();
+
+    /**
+     * The files that were parsed. Any other file in a values directory needs to be checked some other way.
+     */
+    private final Set<File> mIndexedFiles = new HashSet<File>();
+
+    private ValuesIndex() {
+        super();
+    }
+
+    /**
+     * Indexes every values directory in a res directory.
+     *
+     * @param executor
+     *            Used to parse the files in parallel, or null to parse them on the calling thread
+     * @param cache
+     *            The cache of previously parsed files, or null to parse every file
+     */
+    public static ValuesIndex build(final File resDirectory, final ExecutorService executor, final ReferenceCache cache) {
+        final ValuesIndex index = new ValuesIndex();
+
+        final List<File> files = new ArrayList<File>();
+        final File[] directories = resDirectory.listFiles();
+
+        if (directories != null) {
+            for (final File directory : directories) {
+                if (directory.isDirectory() && !directory.isHidden() && directory.getName().split("-")[0].equals("values")) {
+                    for (final File file : directory.listFiles()) {
+                        if (file.isFile() && !file.isHidden()) {
+                            files.add(file);
+                        }
+                    }
+                }
+            }
+        }
+
+        final List<List<String[]>> declarations = new ArrayList<List<String[]>>(files.size());
+
+        if (executor == null) {
+            for (final File file : files) {
+                declarations.add(parse(file, cache));
+            }
+        } else {
+            final List<Callable<List<String[]>>> tasks = new ArrayList<Callable<List<String[]>>>(files.size());
+
+            for (final File file : files) {
+                tasks.add(new Callable<List<String[]>>() {
+                    @Override
+                    public List<String[]> call() {
+                        return parse(file, cache);
+                    }
+                });
+            }
+
+            try {
+                for (final Future<List<String[]>> future : executor.invokeAll(tasks)) {
+                    declarations.add(future.get());
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (final ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        // Merge in file order, so the locations are in the same order however the files were parsed
+        for (int i = 0; i < files.size(); i++) {
+            final File file = files.get(i);
+            final List<String[]> fileDeclarations = declarations.get(i);
+
+            if (fileDeclarations != null) {
+                index.mIndexedFiles.add(file);
+
+                final Location location = new Location(file.getAbsolutePath(), file.getParentFile().getName());
+
+                for (final String[] declaration : fileDeclarations) {
+                    index.addDeclaration(declaration[0], declaration[1], location);
+                }
+            }
+        }
+
+        return index;
+    }
+
+    private void addDeclaration(final String type, final String name, final Location location) {
+        Map<String, List<Location>> typeMap = mDeclarations.get(type);
+
+        if (typeMap == null) {
+            typeMap = new HashMap<String, List<Location>>();
+            mDeclarations.put(type, typeMap);
+        }
+
+        List<Location> locations = typeMap.get(name);
+
+        if (locations == null) {
+            locations = new ArrayList<Location>(1);
+            typeMap.put(name, locations);
+        }
+
+        // A resource can only be declared once per file, but don't count it twice if it is
+        if (locations.isEmpty() || locations.get(locations.size() - 1) != location) {
+            locations.add(location);
+        }
+    }
+
+    public boolean isIndexed(final File file) {
+        return mIndexedFiles.contains(file);
+    }
+
+    /**
+     * @return the locations where a resource is declared, in directory order, or an empty list if it isn't declared in any values file
+     */
+    public List<Location> getLocations(final String type, final String name) {
+        final Map<String, List<Location>> typeMap = mDeclarations.get(type);
+
+        if (typeMap == null) {
+            return Collections.emptyList();
+        }
+
+        final List<Location> locations = typeMap.get(name);
+
+        if (locations == null) {
+            return Collections.emptyList();
+        }
+
+        return locations;
+    }
+
+    /**
+     * Finds every resource declared in a values file, using the cached declarations if the file hasn't changed.
+     */
+    private static List<String[]> parse(final File file, final ReferenceCache cache) {
+        if (cache == null) {
+            return parse(file);
+        }
+
+        final ReferenceCache.Entry cachedEntry = cache.get(file);
+
+        if (cachedEntry != null && cachedEntry.getDeclarations() != null) {
+            return cachedEntry.getDeclarations();
+        }
+
+        final ReferenceCache.Entry entry;
+
+        try {
+            entry = cache.get(file, ReferenceCache.hash(FileUtilities.getFileContents(file)));
+        } catch (final IOException e) {
+            return null;
+        }
+
+        if (entry.getDeclarations() == null) {
+            // Files that can't be parsed aren't cached, and are parsed again next time
+            entry.setDeclarations(parse(file));
+        }
+
+        return entry.getDeclarations();
+    }
+
+    /**
+     * Finds every resource declared in a values file.
+     *
+     * @return the (type, name) of every declaration, with names as they appear in R.java, or null if the file couldn't be parsed
+     */
+    private static List<String[]> parse(final File file) {
+        final List<String[]> declarations = new ArrayList<String[]>();
+
+        InputStream inputStream = null;
+        XMLStreamReader reader = null;
+
+        try {
+            inputStream = new FileInputStream(file);
+            FileUtilities.countRead(file.length());
+
+            final XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+
+            reader = factory.createXMLStreamReader(inputStream);
+
+            int depth = 0;
+            String styleable = null;
+
+            while (reader.hasNext()) {
+                final int event = reader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+
+                    final String element = reader.getLocalName();
+                    final String name = reader.getAttributeValue(null, "name");
+
+                    if (name == null) {
+                        continue;
+                    }
+
+                    if (depth == 2) {
+                        // A direct child of <resources>
+                        final String type = getDeclaredType(element, name, reader.getAttributeValue(null, "type"));
+
+                        if (type != null) {
+                            declarations.add(new String[] { type, getResourceName(name) });
+
+                            if (type.equals("styleable")) {
+                                styleable = getResourceName(name);
+                            }
+                        }
+                    } else if (depth == 3 && styleable != null && element.equals("attr")) {
+                        // An attribute of a styleable, which is also an attr unless it belongs to another package
+                        declarations.add(new String[] { "styleable", styleable + '_' + getResourceName(name) });
+
+                        if (name.indexOf(':') < 0) {
+                            declarations.add(new String[] { "attr", getResourceName(name) });
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == 2) {
+                        styleable = null;
+                    }
+
+                    depth--;
+                }
+            }
+        } catch (final XMLStreamException e) {
+            return null;
+        } catch (final IOException e) {
+            return null;
+        } finally {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+
+                if (inputStream != null) {
+                    inputStream.close();
+                }
+            } catch (final XMLStreamException e) {
+                e.printStackTrace();
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return declarations;
+    }
+
+    /**
+     * Finds the extent of every declaration in a values file. Unlike {@link #build}, this doesn't need a well-formed file: it's only used to work out which
+     * declaration a position in the file belongs to.
+     *
+     * @return the declarations in the order they appear in the file
+     */
+    public static List<Element> findElements(final CharSequence fileContents) {
+        final List<Element> elements = new ArrayList<Element>();
+        final int length = fileContents.length();
+
+        int depth = 0;
+        int elementStart = -1;
+        Resource resource = null;
+
+        for (int tagStart = CharSequenceUtilities.indexOf(fileContents, '<'); tagStart >= 0 && tagStart + 1 < length;) {
+            final int tagEnd;
+
+            if (CharSequenceUtilities.startsWith(fileContents, "<!--", tagStart)) {
+                final int commentEnd = CharSequenceUtilities.indexOf(fileContents, "-->", tagStart + 4);
+                tagEnd = commentEnd < 0 ? -1 : commentEnd + 2;
+            } else if (CharSequenceUtilities.startsWith(fileContents, "<![CDATA[", tagStart)) {
+                final int dataEnd = CharSequenceUtilities.indexOf(fileContents, "]]>", tagStart + 9);
+                tagEnd = dataEnd < 0 ? -1 : dataEnd + 2;
+            } else {
+                tagEnd = findTagEnd(fileContents, tagStart + 1);
+
+                if (tagEnd < 0) {
+                    break;
+                }
+
+                final char next = fileContents.charAt(tagStart + 1);
+
+                if (next == '/') {
+                    if (depth == 2 && resource != null) {
+                        elements.add(new Element(elementStart, tagEnd + 1, resource));
+                        resource = null;
+                    }
+
+                    depth--;
+                } else if (next != '?' && next != '!') {
+                    depth++;
+
+                    if (depth == 2) {
+                        elementStart = tagStart;
+                        resource = getDeclaredResource(fileContents, tagStart + 1, tagEnd);
+                    }
+
+                    if (fileContents.charAt(tagEnd - 1) == '/') {
+                        // An empty element
+                        if (depth == 2 && resource != null) {
+                            elements.add(new Element(elementStart, tagEnd + 1, resource));
+                            resource = null;
+                        }
+
+                        depth--;
+                    }
+                }
+            }
+
+            if (tagEnd < 0) {
+                break;
+            }
+
+            tagStart = CharSequenceUtilities.indexOf(fileContents, '<', tagEnd + 1);
+        }
+
+        return elements;
+    }
+
+    /**
+     * Finds every id declared by a layout file (<code>android:id="@+id/name"</code>), in one pass over its tags, rather than looking for each id in turn.
+     *
+     * @return the ids, with names as they appear in R.java
+     */
+    public static Set<String> findDeclaredIds(final CharSequence fileContents) {
+        final Set<String> ids = new HashSet<String>();
+        final int length = fileContents.length();
+
+        for (int tagStart = CharSequenceUtilities.indexOf(fileContents, '<'); tagStart >= 0 && tagStart + 1 < length;) {
+            final int tagEnd;
+
+            if (CharSequenceUtilities.startsWith(fileContents, "<!--", tagStart)) {
+                final int commentEnd = CharSequenceUtilities.indexOf(fileContents, "-->", tagStart + 4);
+                tagEnd = commentEnd < 0 ? -1 : commentEnd + 2;
+            } else if (CharSequenceUtilities.startsWith(fileContents, "<![CDATA[", tagStart)) {
+                final int dataEnd = CharSequenceUtilities.indexOf(fileContents, "]]>", tagStart + 9);
+                tagEnd = dataEnd < 0 ? -1 : dataEnd + 2;
+            } else {
+                tagEnd = findTagEnd(fileContents, tagStart + 1);
+
+                if (tagEnd >= 0) {
+                    addDeclaredIds(fileContents, tagStart + 1, tagEnd, ids);
+                }
+            }
+
+            if (tagEnd < 0) {
+                break;
+            }
+
+            tagStart = CharSequenceUtilities.indexOf(fileContents, '<', tagEnd + 1);
+        }
+
+        return ids;
+    }
+
+    /**
+     * Adds the ids declared by the <code>:id</code> attributes of a start tag.
+     */
+    private static void addDeclaredIds(final CharSequence fileContents, final int start, final int end, final Set<String> ids) {
+        int position = start;
+
+        while (position < end) {
+            final char c = fileContents.charAt(position);
+
+            if (Character.isWhitespace(c) || c == '/') {
+                position++;
+                continue;
+            }
+
+            final int nameStart = position;
+
+            while (position < end && fileContents.charAt(position) != '=' && !Character.isWhitespace(fileContents.charAt(position))) {
+                position++;
+            }
+
+            final int nameEnd = position;
+
+            while (position < end && Character.isWhitespace(fileContents.charAt(position))) {
+                position++;
+            }
+
+            if (position >= end || fileContents.charAt(position) != '=') {
+                continue;
+            }
+
+            position++;
+
+            while (position < end && Character.isWhitespace(fileContents.charAt(position))) {
+                position++;
+            }
+
+            if (position >= end || (fileContents.charAt(position) != '"' && fileContents.charAt(position) != '\'')) {
+                continue;
+            }
+
+            final int valueEnd = CharSequenceUtilities.indexOf(fileContents, fileContents.charAt(position), position + 1);
+
+            if (valueEnd < 0 || valueEnd > end) {
+                return;
+            }
+
+            if (nameEnd - nameStart > 3 && CharSequenceUtilities.startsWith(fileContents, ":id", nameEnd - 3)
+                    && CharSequenceUtilities.startsWith(fileContents, "@+id/", position + 1) && position + 6 < valueEnd) {
+                ids.add(getResourceName(fileContents.subSequence(position + 6, valueEnd).toString()));
+            }
+
+            position = valueEnd + 1;
+        }
+    }
+
+    /**
+     * @return the index of the '&gt;' that ends the tag, skipping any in quoted attribute values, or -1 if the tag isn't closed
+     */
+    private static int findTagEnd(final CharSequence fileContents, final int start) {
+        char quote = 0;
+
+        for (int i = start; i < fileContents.length(); i++) {
+            final char c = fileContents.charAt(i);
+
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the resource declared by a start tag, or null if it doesn't declare one
+     */
+    private static Resource getDeclaredResource(final CharSequence fileContents, final int start, final int end) {
+        int elementEnd = start;
+
+        while (elementEnd < end && !Character.isWhitespace(fileContents.charAt(elementEnd)) && fileContents.charAt(elementEnd) != '/') {
+            elementEnd++;
+        }
+
+        final String element = fileContents.subSequence(start, elementEnd).toString();
+        final String name = getAttributeValue(fileContents, elementEnd, end, "name");
+
+        if (name == null) {
+            return null;
+        }
+
+        final String type = getDeclaredType(element, name, getAttributeValue(fileContents, elementEnd, end, "type"));
+
+        if (type == null) {
+            return null;
+        }
+
+        return new Resource(type, getResourceName(name));
+    }
+
+    /**
+     * @return the value of an attribute in a start tag, or null if the tag doesn't have it
+     */
+    private static String getAttributeValue(final CharSequence fileContents, final int start, final int end, final String attribute) {
+        int position = start;
+
+        while (position < end) {
+            final char c = fileContents.charAt(position);
+
+            if (Character.isWhitespace(c) || c == '/') {
+                position++;
+                continue;
+            }
+
+            final int nameStart = position;
+
+            while (position < end && fileContents.charAt(position) != '=' && !Character.isWhitespace(fileContents.charAt(position))) {
+                position++;
+            }
+
+            final int nameEnd = position;
+
+            while (position < end && Character.isWhitespace(fileContents.charAt(position))) {
+                position++;
+            }
+
+            if (position >= end || fileContents.charAt(position) != '=') {
+                continue;
+            }
+
+            position++;
+
+            while (position < end && Character.isWhitespace(fileContents.charAt(position))) {
+                position++;
+            }
+
+            if (position >= end || (fileContents.charAt(position) != '"' && fileContents.charAt(position) != '\'')) {
+                continue;
+            }
+
+            final int valueEnd = CharSequenceUtilities.indexOf(fileContents, fileContents.charAt(position), position + 1);
+
+            if (valueEnd < 0 || valueEnd > end) {
+                return null;
+            }
+
+            if (nameEnd - nameStart == attribute.length() && CharSequenceUtilities.startsWith(fileContents, attribute, nameStart)) {
+                return fileContents.subSequence(position + 1, valueEnd).toString();
+            }
+
+            position = valueEnd + 1;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the type of resource declared by a direct child of &lt;resources&gt;, or null if it doesn't declare one
+     */
+    private static String getDeclaredType(final String element, final String name, final String type) {
+        if (element.equals("declare-styleable")) {
+            return "styleable";
+        }
+
+        if (element.equals("item")) {
+            return type;
+        }
+
+        if (element.equals("array") || element.endsWith("-array")) {
+            return "array";
+        }
+
+        if (sTypeElements.contains(element) && name.indexOf(':') < 0) {
+            return element;
+        }
+
+        return null;
+    }
+
+    /**
+     * Converts a name as it was declared to the name used in R.java.
+     */
+    private static String getResourceName(final String name) {
+        return name.replace('.', '_').replace(':', '_');
+    }
+}